@@ -0,0 +1,40 @@
+package com.iub.fall2016.ds.project1.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.iub.fall2016.ds.project1.CsrGraph;
+import com.iub.fall2016.ds.project1.GraphGenerator;
+import com.iub.fall2016.ds.project1.MappedGraphLoader;
+
+/**
+ * Inputs shared by the benchmarks: R-MAT graphs with 2^scale pages and about
+ * EDGE_FACTOR links per page, with the Graph500 probabilities, so the
+ * in-degrees are as skewed as in a web graph. The seed is fixed, so every
+ * fork measures the same graph.
+ */
+final class BenchmarkGraphs {
+	static final int EDGE_FACTOR = 8;
+	static final double DAMPING_FACTOR = 0.85;
+	static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+	private BenchmarkGraphs() {
+	}
+
+	// text input file, deleted when the fork exits
+	static File write(int scale) throws IOException {
+		File file = File.createTempFile("pagerank-rmat-" + scale + "-", ".input");
+		file.deleteOnExit();
+		GraphGenerator.rmat(scale, EDGE_FACTOR, 0.57, 0.19, 0.19, 1).write(file.getPath(), THREADS);
+		return file;
+	}
+
+	static CsrGraph load(int scale) throws IOException {
+		File file = write(scale);
+		try {
+			return new MappedGraphLoader(THREADS).load(file.getPath());
+		} finally {
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,20 @@
+package com.iub.fall2016.ds.project1.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the gc profiler, so every result also reports
+ * the bytes allocated per operation. Takes the usual JMH command line, e.g.
+ * "IterationBenchmark -p scale=17" to run one benchmark on one size.
+ */
+public class BenchmarkMain {
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder().parent(new CommandLineOptions(args)).addProfiler(GCProfiler.class)
+				.build();
+		new Runner(options).run();
+	}
+}
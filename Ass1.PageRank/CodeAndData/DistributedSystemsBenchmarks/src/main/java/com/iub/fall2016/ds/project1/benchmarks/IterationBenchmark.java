@@ -0,0 +1,103 @@
+package com.iub.fall2016.ds.project1.benchmarks;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.iub.fall2016.ds.project1.CsrGraph;
+import com.iub.fall2016.ds.project1.GaussSeidelPageRank;
+import com.iub.fall2016.ds.project1.ParallelPageRank;
+import com.iub.fall2016.ds.project1.ResidualNorm;
+import com.iub.fall2016.ds.project1.SequentialPageRank;
+
+/**
+ * One page rank iteration of every solver on a generated graph.
+ *
+ * push: SequentialPageRank.pushIteration, the single threaded scatter.
+ * pull: ParallelPageRank.iterate, the fork/join gather over in-links.
+ * gauss-seidel: one in-place GaussSeidelPageRank sweep.
+ *
+ * The thread pools are created once per trial, so only the iteration is
+ * measured. The ranks carry over from one invocation to the next, which
+ * does not change the work done. Steady state allocation should be zero;
+ * the gc profiler reports it per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IterationBenchmark {
+	@Param({ "14", "17", "20" })
+	public int scale;
+
+	@Param({ "push", "pull", "gauss-seidel" })
+	public String solver;
+
+	private CsrGraph graph;
+	private SequentialPageRank sequential;
+	private ParallelPageRank parallel;
+	private GaussSeidelPageRank gaussSeidel;
+	private double[] rank;
+	private double[] nextRank;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		graph = BenchmarkGraphs.load(scale);
+		rank = new double[graph.getNumPages()];
+		nextRank = new double[graph.getNumPages()];
+		Arrays.fill(rank, 1.0 / graph.getNumPages());
+		if (solver.equals("push")) {
+			sequential = new SequentialPageRank();
+			sequential.parseArgs(new String[] { "", "", "1", String.valueOf(BenchmarkGraphs.DAMPING_FACTOR),
+					"--mode=push" });
+			sequential.setGraph(graph);
+		} else if (solver.equals("pull")) {
+			parallel = new ParallelPageRank(graph, BenchmarkGraphs.THREADS);
+		} else {
+			gaussSeidel = new GaussSeidelPageRank(graph, BenchmarkGraphs.THREADS);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		if (parallel != null) {
+			parallel.shutdown();
+		}
+		if (gaussSeidel != null) {
+			gaussSeidel.shutdown();
+		}
+	}
+
+	@Benchmark
+	public double iteration() {
+		if (gaussSeidel != null) {
+			return gaussSeidel.sweep(rank, BenchmarkGraphs.DAMPING_FACTOR, ResidualNorm.L1);
+		}
+		double residual;
+		if (sequential != null) {
+			residual = sequential.pushIteration(rank, nextRank);
+		} else {
+			residual = parallel.iterate(rank, nextRank, BenchmarkGraphs.DAMPING_FACTOR, ResidualNorm.L1);
+		}
+		double[] swap = rank;
+		rank = nextRank;
+		nextRank = swap;
+		return residual;
+	}
+}
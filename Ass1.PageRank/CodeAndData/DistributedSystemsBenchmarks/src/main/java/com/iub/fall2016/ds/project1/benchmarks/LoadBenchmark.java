@@ -0,0 +1,65 @@
+package com.iub.fall2016.ds.project1.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.iub.fall2016.ds.project1.BinaryGraphFormat;
+import com.iub.fall2016.ds.project1.CsrGraph;
+import com.iub.fall2016.ds.project1.MappedGraphLoader;
+
+/**
+ * Loading a generated graph: parsing the text input with MappedGraphLoader,
+ * and reading the same graph converted by BinaryGraphFormat.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBenchmark {
+	@Param({ "14", "17", "20" })
+	public int scale;
+
+	private File textFile;
+	private File binaryFile;
+
+	@Setup
+	public void setup() throws IOException {
+		textFile = BenchmarkGraphs.write(scale);
+		binaryFile = File.createTempFile("pagerank-rmat-" + scale + "-", ".bin");
+		binaryFile.deleteOnExit();
+		BinaryGraphFormat.write(new MappedGraphLoader(BenchmarkGraphs.THREADS).load(textFile.getPath()),
+				binaryFile.getPath());
+	}
+
+	@TearDown
+	public void tearDown() {
+		textFile.delete();
+		binaryFile.delete();
+	}
+
+	@Benchmark
+	public CsrGraph text() throws IOException {
+		return new MappedGraphLoader(BenchmarkGraphs.THREADS).load(textFile.getPath());
+	}
+
+	@Benchmark
+	public CsrGraph binary() throws IOException {
+		return BinaryGraphFormat.read(binaryFile.getPath());
+	}
+}
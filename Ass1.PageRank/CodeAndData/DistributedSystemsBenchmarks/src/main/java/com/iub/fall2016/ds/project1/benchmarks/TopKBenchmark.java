@@ -0,0 +1,57 @@
+package com.iub.fall2016.ds.project1.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.iub.fall2016.ds.project1.SequentialPageRank;
+import com.iub.fall2016.ds.project1.TopK;
+
+/**
+ * Selecting and sorting the top k pages of the ranks of a generated graph,
+ * after RANK_ITERATIONS iterations so the values are as skewed as real
+ * output.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TopKBenchmark {
+	private static final int RANK_ITERATIONS = 10;
+
+	@Param({ "14", "17", "20" })
+	public int scale;
+
+	@Param({ "10", "1000" })
+	public int k;
+
+	private double[] ranks;
+
+	@Setup
+	public void setup() throws IOException {
+		SequentialPageRank pageRank = new SequentialPageRank();
+		pageRank.parseArgs(new String[] { "", "", String.valueOf(RANK_ITERATIONS),
+				String.valueOf(BenchmarkGraphs.DAMPING_FACTOR), "--mode=push" });
+		pageRank.setGraph(BenchmarkGraphs.load(scale));
+		pageRank.calculatePageRank();
+		ranks = pageRank.getRankValues();
+	}
+
+	@Benchmark
+	public int[] select() {
+		return TopK.select(ranks, 0, ranks.length, k).sort().getPages();
+	}
+}
@@ -0,0 +1,295 @@
+package com.iub.fall2016.ds.project1;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Personalized page rank for B seed sets at once.
+ *
+ * Query b teleports to the pages of seed set b only (each with weight
+ * 1 / |seeds|), and the rank of dangling pages also goes back to the seed
+ * set. With one seed set holding every page this is the global page rank.
+ *
+ * The ranks of all queries are kept row-major in one double[N * B] array:
+ * the rank of page v for query b is rank[v * B + b]. A pull iteration reads
+ * every in-edge once and updates the B ranks of its source in an inner loop
+ * over contiguous memory, so the edges are traversed once per iteration for
+ * all B queries instead of B times.
+ *
+ * Run as a program: BatchedPageRank <input_file_name> <seed_file_name>
+ * <output_file_name> <num_iters> <damp_factor> [threads] [top]. Every line
+ * of the seed file is one seed set of URL numbers.
+ */
+public class BatchedPageRank {
+	// split a range further while it has more in-edges than this
+	private static final int EDGE_GRAIN = 1 << 14;
+	// but never below this many pages
+	private static final int PAGE_GRAIN = 1 << 10;
+
+	private final CsrGraph inGraph;
+	private final ForkJoinPool pool;
+	private final int numPages;
+	// 1 / outDegree(u), 0 for dangling pages
+	private final double[] inverseDegree;
+	private final int[] danglingPages;
+	// number of queries
+	private int batch;
+	// seeds of page v: seedQueries/seedWeights[seedOffsets[v] .. seedOffsets[v + 1] - 1]
+	private int[] seedOffsets;
+	private int[] seedQueries;
+	private double[] seedWeights;
+	// iterations done by the last compute()
+	private int iterationsDone;
+
+	public BatchedPageRank(CsrGraph graph, int threads) {
+		this.numPages = graph.getNumPages();
+		this.inGraph = graph.transpose();
+		this.pool = new ForkJoinPool(Math.max(1, threads));
+		this.inverseDegree = new double[numPages];
+		for (int page = 0; page < numPages; page++) {
+			int degree = graph.outDegree(page);
+			inverseDegree[page] = degree == 0 ? 0.0 : 1.0 / degree;
+		}
+		this.danglingPages = graph.danglingPages();
+	}
+
+	/**
+	 * Run personalized page rank for every seed set.
+	 *
+	 * @param seeds
+	 *            seeds[b] holds the dense page ids of seed set b, not empty
+	 * @return the ranks, row-major: rank of page v for query b at v * B + b
+	 */
+	public double[] compute(int[][] seeds, double dampingFactor, int maxIterations, double tolerance) {
+		if ((long) numPages * seeds.length > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many seed sets for " + numPages + " pages: " + seeds.length);
+		}
+		setSeeds(seeds);
+		double[] rank = new double[numPages * batch];
+		double[] nextRank = new double[numPages * batch];
+		for (int b = 0; b < batch; b++) {
+			for (int page : seeds[b]) {
+				rank[page * batch + b] += 1.0 / seeds[b].length;
+			}
+		}
+
+		double residual = Double.MAX_VALUE;
+		iterationsDone = 0;
+		while (iterationsDone < maxIterations && residual >= tolerance) {
+			residual = iterate(rank, nextRank, dampingFactor);
+			double[] t = rank;
+			rank = nextRank;
+			nextRank = t;
+			iterationsDone++;
+		}
+		return rank;
+	}
+
+	public int getIterationsDone() {
+		return iterationsDone;
+	}
+
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	// index the seed sets by page, so the pull can add the teleport term
+	private void setSeeds(int[][] seeds) {
+		batch = seeds.length;
+		seedOffsets = new int[numPages + 1];
+		for (int[] set : seeds) {
+			if (set.length == 0) {
+				throw new IllegalArgumentException("Empty seed set");
+			}
+			for (int page : set) {
+				seedOffsets[page + 1]++;
+			}
+		}
+		for (int v = 0; v < numPages; v++) {
+			seedOffsets[v + 1] += seedOffsets[v];
+		}
+		seedQueries = new int[seedOffsets[numPages]];
+		seedWeights = new double[seedQueries.length];
+		int[] next = Arrays.copyOf(seedOffsets, numPages);
+		for (int b = 0; b < batch; b++) {
+			for (int page : seeds[b]) {
+				seedQueries[next[page]] = b;
+				seedWeights[next[page]++] = 1.0 / seeds[b].length;
+			}
+		}
+	}
+
+	/**
+	 * One Jacobi iteration for all queries: nextRank[v, b] = d * sum of
+	 * in-neighbour contributions + ((1 - d) + d * dangling rank of b) *
+	 * seed weight of v in b.
+	 *
+	 * @return the largest L1 change of a single query
+	 */
+	private double iterate(double[] rank, double[] nextRank, double dampingFactor) {
+		// rank mass each query sends back to its seeds
+		double[] restart = new double[batch];
+		for (int page : danglingPages) {
+			for (int b = 0; b < batch; b++) {
+				restart[b] += rank[page * batch + b];
+			}
+		}
+		for (int b = 0; b < batch; b++) {
+			restart[b] = (1 - dampingFactor) + dampingFactor * restart[b];
+		}
+
+		PullTask pull = new PullTask(rank, nextRank, restart, dampingFactor, 0, numPages);
+		pool.invoke(pull);
+		double residual = 0.0;
+		for (double queryResidual : pull.residual) {
+			residual = Math.max(residual, queryResidual);
+		}
+		return residual;
+	}
+
+	private class PullTask extends RecursiveAction {
+		private final double[] rank;
+		private final double[] nextRank;
+		private final double[] restart;
+		private final double dampingFactor;
+		private final int from;
+		private final int to;
+		// L1 change of every query over this range, filled in by compute()
+		double[] residual;
+
+		PullTask(double[] rank, double[] nextRank, double[] restart, double dampingFactor, int from, int to) {
+			this.rank = rank;
+			this.nextRank = nextRank;
+			this.restart = restart;
+			this.dampingFactor = dampingFactor;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			int[] inOffsets = inGraph.getOffsets();
+			if (to - from <= PAGE_GRAIN || inOffsets[to] - inOffsets[from] <= EDGE_GRAIN) {
+				computeRange();
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			PullTask left = new PullTask(rank, nextRank, restart, dampingFactor, from, mid);
+			PullTask right = new PullTask(rank, nextRank, restart, dampingFactor, mid, to);
+			invokeAll(left, right);
+			residual = left.residual;
+			for (int b = 0; b < batch; b++) {
+				residual[b] += right.residual[b];
+			}
+		}
+
+		private void computeRange() {
+			int[] inOffsets = inGraph.getOffsets();
+			int[] sources = inGraph.getTargets();
+			int queries = batch;
+			double[] sum = new double[queries];
+			residual = new double[queries];
+			for (int page = from; page < to; page++) {
+				Arrays.fill(sum, 0.0);
+				for (int e = inOffsets[page]; e < inOffsets[page + 1]; e++) {
+					int source = sources[e];
+					double weight = inverseDegree[source];
+					int base = source * queries;
+					for (int b = 0; b < queries; b++) {
+						sum[b] += rank[base + b] * weight;
+					}
+				}
+				int row = page * queries;
+				for (int b = 0; b < queries; b++) {
+					nextRank[row + b] = dampingFactor * sum[b];
+				}
+				for (int s = seedOffsets[page]; s < seedOffsets[page + 1]; s++) {
+					int b = seedQueries[s];
+					nextRank[row + b] += restart[b] * seedWeights[s];
+				}
+				for (int b = 0; b < queries; b++) {
+					residual[b] += Math.abs(nextRank[row + b] - rank[row + b]);
+				}
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 5) {
+			System.err.println("Usage: BatchedPageRank <input_file_name> <seed_file_name> <output_file_name> "
+					+ "<num_iters> <damp_factor> [threads] [top]");
+			System.exit(-1);
+		}
+		int iterations = Integer.parseInt(args[3]);
+		double dampingFactor = Double.parseDouble(args[4]);
+		int threads = args.length > 5 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+		int topCount = args.length > 6 ? Integer.parseInt(args[6]) : 10;
+
+		CsrGraph graph = BinaryGraphFormat.isBinary(args[0]) ? BinaryGraphFormat.read(args[0])
+				: new MappedGraphLoader(threads).load(args[0]);
+		int[] pageIds = graph.getPageIds();
+		CsrGraph.IntIntMap denseIds = new CsrGraph.IntIntMap(pageIds.length);
+		for (int page = 0; page < pageIds.length; page++) {
+			denseIds.put(pageIds[page], page);
+		}
+
+		List<int[]> seedSets = new ArrayList<int[]>();
+		BufferedReader in = new BufferedReader(new FileReader(args[1]));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] tokens = line.trim().split("\\s+");
+				if (tokens[0].isEmpty()) {
+					continue;
+				}
+				int[] set = new int[tokens.length];
+				for (int i = 0; i < tokens.length; i++) {
+					set[i] = denseIds.get(Integer.parseInt(tokens[i]));
+					if (set[i] < 0) {
+						throw new IllegalArgumentException("Seed page " + tokens[i] + " is not in the graph");
+					}
+				}
+				seedSets.add(set);
+			}
+		} finally {
+			in.close();
+		}
+		int[][] seeds = seedSets.toArray(new int[seedSets.size()][]);
+
+		BatchedPageRank batched = new BatchedPageRank(graph, threads);
+		long start = System.nanoTime();
+		double[] ranks;
+		try {
+			ranks = batched.compute(seeds, dampingFactor, iterations, 0.0);
+		} finally {
+			batched.shutdown();
+		}
+		System.out.println(seeds.length + " seed sets, " + batched.getIterationsDone() + " iterations in "
+				+ ((System.nanoTime() - start) / 1e6) + " ms");
+
+		BufferedWriter out = new BufferedWriter(new FileWriter(args[2]), 1 << 16);
+		try {
+			for (int b = 0; b < seeds.length; b++) {
+				TopK top = new TopK(topCount);
+				for (int page = 0; page < graph.getNumPages(); page++) {
+					top.offer(page, ranks[page * seeds.length + b]);
+				}
+				top.sort();
+				out.write("Seed set " + b + ":\n");
+				for (int i = 0; i < top.size(); i++) {
+					out.write(pageIds[top.getPages()[i]] + " : " + top.getValues()[i] + "\n");
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package com.iub.fall2016.ds.project1;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Compact binary on-disk form of a CsrGraph, so the text adjacency list only
+ * has to be parsed once.
+ *
+ * Layout (little endian):
+ *
+ * <pre>
+ * header     int magic "PRNK", int version, int numPages, int flags,
+ *            long numEdges, long pageIdBytes, long degreeBytes
+ * page ids   zigzag varint deltas of the URL numbers, only if flags has
+ *            PAGE_IDS (left out when URL number == dense id)
+ * degrees    varint out-degree of every page, i.e. delta coded offsets
+ * padding    up to a multiple of 4 bytes
+ * targets    numEdges int32 out-links as dense ids
+ * </pre>
+ *
+ * Reading maps the file and copies the targets section straight into the
+ * int[] of the graph, so opening a graph costs about one sequential read.
+ *
+ * Run as a program to convert a text input file:
+ * BinaryGraphFormat <input_file_name> <binary_file_name> [threads]
+ */
+public class BinaryGraphFormat {
+	public static final int MAGIC = 0x4B4E5250; // "PRNK" in little endian
+	public static final int VERSION = 1;
+	// flag bit: the page id section is present
+	public static final int PAGE_IDS = 1;
+
+	private static final int HEADER_BYTES = 40;
+	// targets are mapped and copied in windows of this many bytes
+	private static final long WINDOW_BYTES = 1L << 30;
+
+	public static boolean isBinary(String file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			if (in.length() < HEADER_BYTES) {
+				return false;
+			}
+			ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			in.getChannel().read(magic, 0);
+			return magic.getInt(0) == MAGIC;
+		} finally {
+			in.close();
+		}
+	}
+
+	public static void write(CsrGraph graph, String file) throws IOException {
+		int n = graph.getNumPages();
+		int[] offsets = graph.getOffsets();
+		int[] targets = graph.getTargets();
+		int[] pageIds = graph.getPageIds();
+
+		boolean identity = true;
+		for (int page = 0; page < n && identity; page++) {
+			identity = pageIds[page] == page;
+		}
+
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try {
+			out.setLength(0);
+			FileChannel channel = out.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+			channel.position(HEADER_BYTES);
+
+			long pageIdBytes = 0;
+			if (!identity) {
+				int previous = 0;
+				for (int page = 0; page < n; page++) {
+					int delta = pageIds[page] - previous;
+					pageIdBytes += writeVarint(channel, buffer, (delta << 1) ^ (delta >> 31));
+					previous = pageIds[page];
+				}
+			}
+			long degreeBytes = 0;
+			for (int page = 0; page < n; page++) {
+				degreeBytes += writeVarint(channel, buffer, offsets[page + 1] - offsets[page]);
+			}
+			for (long pad = (HEADER_BYTES + pageIdBytes + degreeBytes) % 4; pad % 4 != 0; pad++) {
+				put(channel, buffer, (byte) 0);
+			}
+			int numEdges = graph.getNumEdges();
+			for (int e = 0; e < numEdges; e++) {
+				if (buffer.remaining() < 4) {
+					flush(channel, buffer);
+				}
+				buffer.putInt(targets[e]);
+			}
+			flush(channel, buffer);
+
+			buffer.clear();
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(identity ? 0 : PAGE_IDS);
+			buffer.putLong(numEdges).putLong(pageIdBytes).putLong(degreeBytes);
+			buffer.flip();
+			channel.write(buffer, 0);
+		} finally {
+			out.close();
+		}
+	}
+
+	public static CsrGraph read(String file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = in.getChannel();
+			ByteBuffer header = map(channel, 0, HEADER_BYTES);
+			if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+				throw new IOException(file + " is not a version " + VERSION + " binary graph");
+			}
+			int n = header.getInt(8);
+			int flags = header.getInt(12);
+			long numEdges = header.getLong(16);
+			long pageIdBytes = header.getLong(24);
+			long degreeBytes = header.getLong(32);
+			if (numEdges > Integer.MAX_VALUE) {
+				throw new IOException("Too many edges for a CSR graph: " + numEdges);
+			}
+
+			long position = HEADER_BYTES;
+			int[] pageIds = new int[n];
+			if ((flags & PAGE_IDS) != 0) {
+				ByteBuffer bytes = map(channel, position, pageIdBytes);
+				int previous = 0;
+				for (int page = 0; page < n; page++) {
+					int zigzag = readVarint(bytes);
+					previous += (zigzag >>> 1) ^ -(zigzag & 1);
+					pageIds[page] = previous;
+				}
+			} else {
+				for (int page = 0; page < n; page++) {
+					pageIds[page] = page;
+				}
+			}
+			position += pageIdBytes;
+
+			int[] offsets = new int[n + 1];
+			ByteBuffer bytes = map(channel, position, degreeBytes);
+			for (int page = 0; page < n; page++) {
+				offsets[page + 1] = offsets[page] + readVarint(bytes);
+			}
+			position += degreeBytes;
+			position = (position + 3) & ~3L;
+
+			int[] targets = new int[(int) numEdges];
+			for (int from = 0; from < targets.length;) {
+				int count = (int) Math.min(targets.length - from, WINDOW_BYTES / 4);
+				map(channel, position + 4L * from, 4L * count).asIntBuffer().get(targets, from, count);
+				from += count;
+			}
+			return new CsrGraph(offsets, targets, pageIds);
+		} finally {
+			in.close();
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: BinaryGraphFormat <input_file_name> <binary_file_name> [threads]");
+			System.exit(-1);
+		}
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		long start = System.nanoTime();
+		CsrGraph graph = new MappedGraphLoader(threads).load(args[0]);
+		long loaded = System.nanoTime();
+		write(graph, args[1]);
+		long written = System.nanoTime();
+
+		System.out.println("Converted " + graph.getNumPages() + " pages, " + graph.getNumEdges() + " links");
+		System.out.println("parse: " + ((loaded - start) / 1e6) + " ms, write: " + ((written - loaded) / 1e6) + " ms");
+	}
+
+	private static MappedByteBuffer map(FileChannel channel, long position, long length) throws IOException {
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("Section of " + length + " bytes is too large to map");
+		}
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+
+	private static int readVarint(ByteBuffer bytes) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = bytes.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return value;
+	}
+
+	private static int writeVarint(FileChannel channel, ByteBuffer buffer, int value) throws IOException {
+		int written = 1;
+		while ((value & ~0x7F) != 0) {
+			put(channel, buffer, (byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+			written++;
+		}
+		put(channel, buffer, (byte) value);
+		return written;
+	}
+
+	private static void put(FileChannel channel, ByteBuffer buffer, byte b) throws IOException {
+		if (!buffer.hasRemaining()) {
+			flush(channel, buffer);
+		}
+		buffer.put(b);
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
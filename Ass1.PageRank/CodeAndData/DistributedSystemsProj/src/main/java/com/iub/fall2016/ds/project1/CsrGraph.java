@@ -0,0 +1,245 @@
+package com.iub.fall2016.ds.project1;
+
+import java.util.Arrays;
+
+/**
+ * Compressed sparse row (CSR) form of the web graph.
+ *
+ * Pages are remapped to dense ids 0..numPages-1 while loading, so that ranks
+ * and out-links can be kept in primitive arrays. The out-links of the dense
+ * page v are targets[offsets[v]] .. targets[offsets[v + 1] - 1], and
+ * pageIds[v] is the URL number v had in the input file.
+ */
+public class CsrGraph {
+	// number of pages
+	private final int numPages;
+	// offsets[v] is the position of the first out-link of page v in targets
+	private final int[] offsets;
+	// out-links of all pages, stored back to back as dense ids
+	private final int[] targets;
+	// URL number of every dense page id
+	private final int[] pageIds;
+
+	public CsrGraph(int[] offsets, int[] targets, int[] pageIds) {
+		this.numPages = pageIds.length;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.pageIds = pageIds;
+	}
+
+	public int getNumPages() {
+		return numPages;
+	}
+
+	public int getNumEdges() {
+		return offsets[numPages];
+	}
+
+	public int[] getOffsets() {
+		return offsets;
+	}
+
+	public int[] getTargets() {
+		return targets;
+	}
+
+	public int[] getPageIds() {
+		return pageIds;
+	}
+
+	public int outDegree(int page) {
+		return offsets[page + 1] - offsets[page];
+	}
+
+	/**
+	 * Pages without out-links. They are not linked to every page in the
+	 * graph; the solvers collect their rank and spread it evenly instead.
+	 */
+	public int[] danglingPages() {
+		int count = 0;
+		for (int v = 0; v < numPages; v++) {
+			if (offsets[v + 1] == offsets[v]) {
+				count++;
+			}
+		}
+		int[] dangling = new int[count];
+		count = 0;
+		for (int v = 0; v < numPages; v++) {
+			if (offsets[v + 1] == offsets[v]) {
+				dangling[count++] = v;
+			}
+		}
+		return dangling;
+	}
+
+	/**
+	 * Build the reverse graph: the "out-links" of page v in the returned graph
+	 * are the pages that link to v. Used by the pull based solver.
+	 */
+	public CsrGraph transpose() {
+		int[] inOffsets = new int[numPages + 1];
+		for (int e = 0; e < targets.length; e++) {
+			inOffsets[targets[e] + 1]++;
+		}
+		for (int v = 0; v < numPages; v++) {
+			inOffsets[v + 1] += inOffsets[v];
+		}
+		int[] sources = new int[targets.length];
+		int[] next = Arrays.copyOf(inOffsets, numPages);
+		for (int u = 0; u < numPages; u++) {
+			for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+				sources[next[targets[e]]++] = u;
+			}
+		}
+		return new CsrGraph(inOffsets, sources, pageIds);
+	}
+
+	/**
+	 * Collects the adjacency list one page at a time and assigns dense ids in
+	 * the order URL numbers are first seen. A page that only appears as an
+	 * out-link still gets an id.
+	 */
+	public static class Builder {
+		// URL number -> dense id
+		private final IntIntMap denseIds = new IntIntMap(1024);
+		// dense id -> URL number
+		private int[] pageIds = new int[1024];
+		private int numPages = 0;
+		// one entry per input line: dense source id and number of out-links
+		private int[] lineSources = new int[1024];
+		private int[] lineDegrees = new int[1024];
+		private int numLines = 0;
+		// out-links of every line, as dense ids, in input order
+		private int[] lineTargets = new int[4096];
+		private int numEdges = 0;
+
+		/**
+		 * Add a page and its out-links. links[from] .. links[from + count - 1]
+		 * are the URL numbers referred by pageId.
+		 */
+		public Builder addPage(int pageId, int[] links, int from, int count) {
+			if (numLines == lineSources.length) {
+				lineSources = Arrays.copyOf(lineSources, numLines * 2);
+				lineDegrees = Arrays.copyOf(lineDegrees, numLines * 2);
+			}
+			if ((long) numEdges + count > Integer.MAX_VALUE) {
+				throw new IllegalStateException("Too many edges for a CSR graph: " + ((long) numEdges + count));
+			}
+			if (numEdges + count > lineTargets.length) {
+				lineTargets = Arrays.copyOf(lineTargets, Math.max(lineTargets.length * 2, numEdges + count));
+			}
+			lineSources[numLines] = denseId(pageId);
+			lineDegrees[numLines] = count;
+			numLines++;
+			for (int i = 0; i < count; i++) {
+				lineTargets[numEdges++] = denseId(links[from + i]);
+			}
+			return this;
+		}
+
+		private int denseId(int pageId) {
+			int id = denseIds.get(pageId);
+			if (id < 0) {
+				id = numPages++;
+				if (id == pageIds.length) {
+					pageIds = Arrays.copyOf(pageIds, id * 2);
+				}
+				pageIds[id] = pageId;
+				denseIds.put(pageId, id);
+			}
+			return id;
+		}
+
+		/**
+		 * Lay the collected out-links out in CSR order. Dangling pages (no
+		 * out-links) keep an empty out-link list.
+		 */
+		public CsrGraph build() {
+			int n = numPages;
+			int[] offsets = new int[n + 1];
+			for (int line = 0; line < numLines; line++) {
+				offsets[lineSources[line] + 1] += lineDegrees[line];
+			}
+			for (int v = 0; v < n; v++) {
+				offsets[v + 1] += offsets[v];
+			}
+
+			int[] targets = new int[numEdges];
+			int[] next = Arrays.copyOf(offsets, n);
+			int edge = 0;
+			for (int line = 0; line < numLines; line++) {
+				int source = lineSources[line];
+				for (int i = 0; i < lineDegrees[line]; i++) {
+					targets[next[source]++] = lineTargets[edge++];
+				}
+			}
+			return new CsrGraph(offsets, targets, Arrays.copyOf(pageIds, n));
+		}
+	}
+
+	/**
+	 * Open addressing int -> int hash map used for the dense id remapping, so
+	 * that loading does not box every URL number.
+	 */
+	static class IntIntMap {
+		private int[] keys;
+		private int[] values;
+		private boolean[] used;
+		private int count = 0;
+
+		IntIntMap(int capacity) {
+			int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+			keys = new int[size];
+			values = new int[size];
+			used = new boolean[size];
+		}
+
+		// returns -1 if the key is not present
+		int get(int key) {
+			int mask = keys.length - 1;
+			for (int slot = mix(key) & mask; used[slot]; slot = (slot + 1) & mask) {
+				if (keys[slot] == key) {
+					return values[slot];
+				}
+			}
+			return -1;
+		}
+
+		void put(int key, int value) {
+			if ((count + 1) * 2 > keys.length) {
+				rehash(keys.length * 2);
+			}
+			int mask = keys.length - 1;
+			int slot = mix(key) & mask;
+			while (used[slot] && keys[slot] != key) {
+				slot = (slot + 1) & mask;
+			}
+			if (!used[slot]) {
+				used[slot] = true;
+				count++;
+			}
+			keys[slot] = key;
+			values[slot] = value;
+		}
+
+		private void rehash(int size) {
+			int[] oldKeys = keys;
+			int[] oldValues = values;
+			boolean[] oldUsed = used;
+			keys = new int[size];
+			values = new int[size];
+			used = new boolean[size];
+			count = 0;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldUsed[i]) {
+					put(oldKeys[i], oldValues[i]);
+				}
+			}
+		}
+
+		private static int mix(int key) {
+			int h = key * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+	}
+}
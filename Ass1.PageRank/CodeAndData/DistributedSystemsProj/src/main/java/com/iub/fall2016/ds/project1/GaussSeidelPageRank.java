@@ -0,0 +1,186 @@
+package com.iub.fall2016.ds.project1;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * In-place (Gauss-Seidel) page rank sweeps over the in-edge index.
+ *
+ * The pages are cut into one block per thread, balanced on in-edges. Each
+ * block is swept in page order and every new rank is written straight back
+ * into the rank array, so pages later in the block already use it. There is
+ * no second rank table and usually far fewer sweeps are needed than with
+ * the Jacobi iteration of ParallelPageRank.
+ *
+ * With one thread this is the classic Gauss-Seidel method. With more
+ * threads a block may read the ranks of other blocks before or after they
+ * are updated in the same sweep; both are valid for an asynchronous
+ * iteration and converge to the same ranks, but the number of sweeps may
+ * vary slightly from run to run.
+ *
+ * Unlike the Jacobi iteration, an in-place sweep does not keep the ranks
+ * summing to 1, and an error in the total only decays by about d per sweep.
+ * The ranks are therefore rescaled to sum 1 after every sweep. The solution
+ * sums to 1, so this does not move the fixed point.
+ */
+public class GaussSeidelPageRank {
+	private final CsrGraph inGraph;
+	private final ForkJoinPool pool;
+	// 1 / outDegree(u), 0 for dangling pages
+	private final double[] inverseDegree;
+	private final int[] danglingPages;
+	// block b is pages blockStart[b] .. blockStart[b + 1] - 1
+	private final int[] blockStart;
+
+	public GaussSeidelPageRank(CsrGraph graph, int threads) {
+		int n = graph.getNumPages();
+		this.inGraph = graph.transpose();
+		this.pool = new ForkJoinPool(Math.max(1, threads));
+		this.inverseDegree = new double[n];
+		for (int page = 0; page < n; page++) {
+			int degree = graph.outDegree(page);
+			inverseDegree[page] = degree == 0 ? 0.0 : 1.0 / degree;
+		}
+		this.danglingPages = graph.danglingPages();
+		this.blockStart = blocks(Math.max(1, threads));
+	}
+
+	// cut the pages in blocks with about the same number of pages + in-edges
+	private int[] blocks(int count) {
+		int n = inGraph.getNumPages();
+		int[] inOffsets = inGraph.getOffsets();
+		long work = (long) n + inGraph.getNumEdges();
+		int[] start = new int[count + 1];
+		int page = 0;
+		for (int b = 1; b < count; b++) {
+			long target = work * b / count;
+			while (page < n && (long) page + inOffsets[page] < target) {
+				page++;
+			}
+			start[b] = page;
+		}
+		start[count] = n;
+		return start;
+	}
+
+	/**
+	 * One in-place sweep: rank[v] = (1 - d) / N + d * (sum of in-neighbour
+	 * contributions + dangling rank / N), using the newest ranks available,
+	 * followed by the rescale.
+	 *
+	 * @return the change made by the sweep, measured with norm, plus the
+	 *         change made by the rescale
+	 */
+	public double sweep(final double[] rank, final double dampingFactor, final ResidualNorm norm) {
+		double dangling = 0.0;
+		for (int page : danglingPages) {
+			dangling += rank[page];
+		}
+		final BlockSweep[] sweeps = new BlockSweep[blockStart.length - 1];
+		for (int b = 0; b < sweeps.length; b++) {
+			sweeps[b] = new BlockSweep(rank, dampingFactor, dangling, norm, blockStart[b], blockStart[b + 1]);
+		}
+		pool.invoke(new RecursiveAction() {
+			@Override
+			protected void compute() {
+				invokeAll(sweeps);
+			}
+		});
+		double residual = 0.0;
+		double total = 0.0;
+		for (BlockSweep block : sweeps) {
+			residual = norm.combine(residual, block.residual);
+			total += block.total;
+		}
+
+		final Rescale[] rescales = new Rescale[sweeps.length];
+		for (int b = 0; b < rescales.length; b++) {
+			rescales[b] = new Rescale(rank, 1.0 / total, blockStart[b], blockStart[b + 1]);
+		}
+		pool.invoke(new RecursiveAction() {
+			@Override
+			protected void compute() {
+				invokeAll(rescales);
+			}
+		});
+		// the rescale moves the ranks by |1 - total| in L1, and by at most
+		// that much per page
+		return residual + Math.abs(1.0 - total) / Math.min(1.0, total);
+	}
+
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	private class BlockSweep extends RecursiveAction {
+		private final double[] rank;
+		private final double dampingFactor;
+		// dangling rank at the start of the sweep
+		private final double dangling;
+		private final ResidualNorm norm;
+		private final int from;
+		private final int to;
+		// residual and sum of the new ranks of this block, filled in by
+		// compute()
+		double residual;
+		double total;
+
+		BlockSweep(double[] rank, double dampingFactor, double dangling, ResidualNorm norm, int from, int to) {
+			this.rank = rank;
+			this.dampingFactor = dampingFactor;
+			this.dangling = dangling;
+			this.norm = norm;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			int[] inOffsets = inGraph.getOffsets();
+			int[] sources = inGraph.getTargets();
+			double n = inGraph.getNumPages();
+			double teleport = (1 - dampingFactor) / n;
+			// kept up to date with the dangling pages of this block
+			double danglingRank = dangling;
+			double blockResidual = 0.0;
+			double blockTotal = 0.0;
+			for (int page = from; page < to; page++) {
+				double sum = 0.0;
+				for (int e = inOffsets[page]; e < inOffsets[page + 1]; e++) {
+					sum += rank[sources[e]] * inverseDegree[sources[e]];
+				}
+				double value = teleport + dampingFactor * (sum + danglingRank / n);
+				double change = value - rank[page];
+				rank[page] = value;
+				if (inverseDegree[page] == 0.0) {
+					danglingRank += change;
+				}
+				blockResidual = norm.accumulate(blockResidual, change);
+				blockTotal += value;
+			}
+			residual = blockResidual;
+			total = blockTotal;
+		}
+	}
+
+	private static class Rescale extends RecursiveAction {
+		private final double[] rank;
+		private final double scale;
+		private final int from;
+		private final int to;
+
+		Rescale(double[] rank, double scale, int from, int to) {
+			this.rank = rank;
+			this.scale = scale;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			for (int page = from; page < to; page++) {
+				rank[page] *= scale;
+			}
+		}
+	}
+}
@@ -0,0 +1,377 @@
+package com.iub.fall2016.ds.project1;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Synthetic graphs for benchmarks, written in the text adjacency format
+ * (line p holds page p followed by its out-links), which SequentialPageRank
+ * and MPJPageRankMain read directly and BinaryGraphFormat converts.
+ *
+ * Models:
+ *
+ * <pre>
+ * er   N avgDegree            Erdos-Renyi G(N, p), p = avgDegree / (N - 1)
+ * rmat scale edgeFactor [a b c] R-MAT (Kronecker) graph with 2^scale pages
+ *                             and about edgeFactor * 2^scale links
+ * ba   N m                    Barabasi-Albert, every page links to m
+ *                             earlier pages chosen by degree
+ * </pre>
+ *
+ * Out-links are sorted, without duplicates and without self links, so
+ * rmat and ba pages may have fewer links than drawn.
+ *
+ * Every random number is a hash of the seed, a stream (the page, or the link
+ * for ba) and an index, so every page is generated on its own and the output
+ * depends only on the seed, never on the number of threads. The R-MAT links
+ * of a page are drawn row by row: the out-degree follows the probability of
+ * the row, and each link picks its column bits given the row bits. The
+ * Barabasi-Albert links use the parallel form of the Batagelj-Brandes
+ * algorithm (Sanders and Schulz): link k of the sequential edge list
+ * copies the end point of a uniformly chosen earlier position, which is
+ * found by following such copies back until a source end point is hit.
+ *
+ * Writing: pages are generated and formatted by a thread pool in chunks of
+ * CHUNK_PAGES pages, and the chunks are written to the file in order by the
+ * calling thread, with at most two chunks per thread in flight.
+ *
+ * Run as a program: GraphGenerator <output_file_name> <model> <params...>
+ * [--seed=<seed>] [--threads=<threads>]
+ */
+public abstract class GraphGenerator {
+	// pages per chunk generated by one task
+	private static final int CHUNK_PAGES = 1 << 14;
+	private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+	protected final int numPages;
+	protected final long seed;
+
+	protected GraphGenerator(int numPages, long seed) {
+		this.numPages = numPages;
+		this.seed = seed;
+	}
+
+	public int getNumPages() {
+		return numPages;
+	}
+
+	/**
+	 * @return the out-links of page, sorted, distinct and without page itself
+	 */
+	public abstract int[] outLinks(int page);
+
+	public static GraphGenerator erdosRenyi(int numPages, double averageDegree, long seed) {
+		return new ErdosRenyi(numPages, averageDegree, seed);
+	}
+
+	public static GraphGenerator rmat(int scale, double edgeFactor, double a, double b, double c, long seed) {
+		return new RMat(scale, edgeFactor, a, b, c, seed);
+	}
+
+	public static GraphGenerator barabasiAlbert(int numPages, int linksPerPage, long seed) {
+		return new BarabasiAlbert(numPages, linksPerPage, seed);
+	}
+
+	/**
+	 * Write the graph in the text adjacency format.
+	 *
+	 * @return the number of links written
+	 */
+	public long write(String file, int threads) throws IOException {
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+		OutputStream out = new FileOutputStream(file);
+		long links = 0;
+		try {
+			ArrayDeque<Future<Chunk>> inFlight = new ArrayDeque<Future<Chunk>>();
+			int next = 0;
+			while (next < numPages || !inFlight.isEmpty()) {
+				while (next < numPages && inFlight.size() < 2 * Math.max(1, threads)) {
+					final int from = next;
+					final int to = (int) Math.min(numPages, (long) next + CHUNK_PAGES);
+					inFlight.add(pool.submit(new Callable<Chunk>() {
+						public Chunk call() {
+							return format(from, to);
+						}
+					}));
+					next = to;
+				}
+				Chunk chunk = inFlight.poll().get();
+				out.write(chunk.bytes, 0, chunk.length);
+				links += chunk.links;
+			}
+		} catch (InterruptedException e) {
+			throw new IOException("Interrupted while generating " + file, e);
+		} catch (ExecutionException e) {
+			throw new IOException("Generating " + file + " failed", e.getCause());
+		} finally {
+			pool.shutdownNow();
+			out.close();
+		}
+		return links;
+	}
+
+	// the lines of pages from .. to - 1
+	private Chunk format(int from, int to) {
+		Chunk chunk = new Chunk();
+		for (int page = from; page < to; page++) {
+			int[] links = outLinks(page);
+			chunk.append(page);
+			for (int target : links) {
+				chunk.append(' ');
+				chunk.append(target);
+			}
+			chunk.append('\n');
+			chunk.links += links.length;
+		}
+		return chunk;
+	}
+
+	// formatted lines of one chunk
+	private static class Chunk {
+		byte[] bytes = new byte[1 << 16];
+		int length = 0;
+		long links = 0;
+
+		void append(char c) {
+			if (length == bytes.length) {
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			}
+			bytes[length++] = (byte) c;
+		}
+
+		void append(int value) {
+			if (length + 11 > bytes.length) {
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+			}
+			int digits = 1;
+			for (int rest = value / 10; rest > 0; rest /= 10) {
+				digits++;
+			}
+			for (int i = length + digits - 1; i >= length; i--) {
+				bytes[i] = (byte) ('0' + value % 10);
+				value /= 10;
+			}
+			length += digits;
+		}
+	}
+
+	// SplitMix64 finalizer
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	// uniform in [0, 1), the index-th number of a stream
+	protected final double random(long stream, long index) {
+		return (mix(mix(seed + stream * GOLDEN) + index * GOLDEN) >>> 11) * 0x1.0p-53;
+	}
+
+	// sort and remove duplicates and page itself
+	protected static int[] distinct(int[] links, int count, int page) {
+		Arrays.sort(links, 0, count);
+		int kept = 0;
+		for (int i = 0; i < count; i++) {
+			if (links[i] != page && (kept == 0 || links[i] != links[kept - 1])) {
+				links[kept++] = links[i];
+			}
+		}
+		return Arrays.copyOf(links, kept);
+	}
+
+	private static class ErdosRenyi extends GraphGenerator {
+		private final double logMiss;
+
+		ErdosRenyi(int numPages, double averageDegree, long seed) {
+			super(numPages, seed);
+			double p = Math.min(1.0, averageDegree / Math.max(1, numPages - 1));
+			this.logMiss = Math.log(1 - p);
+		}
+
+		@Override
+		public int[] outLinks(int page) {
+			if (logMiss == 0.0) {
+				return new int[0];
+			}
+			// skip over the misses: the gap to the next link is geometric
+			int[] links = new int[16];
+			int count = 0;
+			long candidate = -1;
+			long index = 0;
+			while (true) {
+				double gap = Math.floor(Math.log(1 - random(page, index++)) / logMiss);
+				if (gap >= numPages) {
+					break;
+				}
+				candidate += 1 + (long) gap;
+				if (candidate >= numPages - 1) {
+					break;
+				}
+				if (count == links.length) {
+					links = Arrays.copyOf(links, count * 2);
+				}
+				// candidates leave out page itself
+				links[count++] = (int) (candidate < page ? candidate : candidate + 1);
+			}
+			return Arrays.copyOf(links, count);
+		}
+	}
+
+	private static class RMat extends GraphGenerator {
+		private final int scale;
+		private final double numLinks;
+		private final double top;
+		// probability of column bit 0 given row bit 0 and row bit 1
+		private final double left0;
+		private final double left1;
+
+		RMat(int scale, double edgeFactor, double a, double b, double c, long seed) {
+			super(checkScale(scale), seed);
+			double d = 1 - a - b - c;
+			if (a <= 0 || b < 0 || c < 0 || d < 0) {
+				throw new IllegalArgumentException("R-MAT probabilities must be positive and sum to 1");
+			}
+			this.scale = scale;
+			this.numLinks = edgeFactor * numPages;
+			this.top = a + b;
+			this.left0 = a / (a + b);
+			this.left1 = c / (c + d);
+		}
+
+		private static int checkScale(int scale) {
+			if (scale < 0 || scale > 30) {
+				throw new IllegalArgumentException("R-MAT scale must be between 0 and 30: " + scale);
+			}
+			return 1 << scale;
+		}
+
+		@Override
+		public int[] outLinks(int page) {
+			double rowProbability = 1.0;
+			for (int bit = 0; bit < scale; bit++) {
+				rowProbability *= ((page >>> bit) & 1) == 0 ? top : 1 - top;
+			}
+			int degree = poisson(numLinks * rowProbability, page);
+			// numbers 0 and 1 of the stream drew the degree
+			long index = 2;
+			int[] links = new int[degree];
+			for (int e = 0; e < degree; e++) {
+				int target = 0;
+				for (int bit = scale - 1; bit >= 0; bit--) {
+					double left = ((page >>> bit) & 1) == 0 ? left0 : left1;
+					if (random(page, index++) >= left) {
+						target |= 1 << bit;
+					}
+				}
+				links[e] = target;
+			}
+			return distinct(links, degree, page);
+		}
+
+		// Poisson distributed, from the first two numbers of the stream
+		private int poisson(double mean, int page) {
+			if (mean > 64) {
+				// normal approximation, by Box-Muller
+				double gaussian = Math.sqrt(-2 * Math.log(1 - random(page, 0)))
+						* Math.cos(2 * Math.PI * random(page, 1));
+				return (int) Math.max(0, Math.round(mean + Math.sqrt(mean) * gaussian));
+			}
+			// invert the cumulative distribution
+			double u = random(page, 0);
+			double probability = Math.exp(-mean);
+			double cumulative = probability;
+			int k = 0;
+			while (u > cumulative && k < 1000) {
+				k++;
+				probability *= mean / k;
+				cumulative += probability;
+			}
+			return k;
+		}
+	}
+
+	private static class BarabasiAlbert extends GraphGenerator {
+		private final int linksPerPage;
+
+		BarabasiAlbert(int numPages, int linksPerPage, long seed) {
+			super(numPages, seed);
+			if (linksPerPage < 1) {
+				throw new IllegalArgumentException("Barabasi-Albert needs at least one link per page");
+			}
+			this.linksPerPage = linksPerPage;
+		}
+
+		@Override
+		public int[] outLinks(int page) {
+			int[] links = new int[linksPerPage];
+			for (int i = 0; i < linksPerPage; i++) {
+				links[i] = target((long) page * linksPerPage + i);
+			}
+			return distinct(links, linksPerPage, page);
+		}
+
+		// The edge list is source(0), target(0), source(1), ...: source(k) is
+		// k / m and target(k) copies position r, uniform in [0, 2k]. An even
+		// r is a source, an odd r the target of an earlier link.
+		private int target(long link) {
+			long hop = 0;
+			while (true) {
+				long position = (long) (random(link, hop++) * (2 * link + 1));
+				if ((position & 1) == 0) {
+					return (int) ((position >>> 1) / linksPerPage);
+				}
+				link = position >>> 1;
+				hop = 0;
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.err.println("Usage: GraphGenerator <output_file_name> er <num_pages> <avg_degree> | rmat <scale> "
+					+ "<edge_factor> [a b c] | ba <num_pages> <links_per_page> [--seed=<seed>] [--threads=<threads>]");
+			System.exit(-1);
+		}
+		long seed = 1;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int count = 0;
+		String[] params = new String[args.length];
+		for (String arg : args) {
+			if (arg.startsWith("--seed=")) {
+				seed = Long.parseLong(arg.substring("--seed=".length()));
+			} else if (arg.startsWith("--threads=")) {
+				threads = Integer.parseInt(arg.substring("--threads=".length()));
+			} else {
+				params[count++] = arg;
+			}
+		}
+
+		GraphGenerator generator;
+		String model = params[1];
+		if (model.equals("er") && count == 4) {
+			generator = erdosRenyi(Integer.parseInt(params[2]), Double.parseDouble(params[3]), seed);
+		} else if (model.equals("rmat") && (count == 4 || count == 7)) {
+			double a = count == 7 ? Double.parseDouble(params[4]) : 0.57;
+			double b = count == 7 ? Double.parseDouble(params[5]) : 0.19;
+			double c = count == 7 ? Double.parseDouble(params[6]) : 0.19;
+			generator = rmat(Integer.parseInt(params[2]), Double.parseDouble(params[3]), a, b, c, seed);
+		} else if (model.equals("ba") && count == 4) {
+			generator = barabasiAlbert(Integer.parseInt(params[2]), Integer.parseInt(params[3]), seed);
+		} else {
+			throw new IllegalArgumentException("Unknown model or wrong parameters: " + model);
+		}
+
+		long start = System.nanoTime();
+		long links = generator.write(params[0], threads);
+		System.out.println("Wrote " + generator.getNumPages() + " pages and " + links + " links to " + params[0]
+				+ " in " + (System.nanoTime() - start) / 1e6 + " ms");
+	}
+}
@@ -0,0 +1,421 @@
+package com.iub.fall2016.ds.project1;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Updates converged page ranks after edges are inserted or deleted, without
+ * iterating over the whole graph again.
+ *
+ * The previous ranks x are the starting point. When x was converged on the
+ * old graph, the residual b + d * M * x - x of the new graph is zero except
+ * at the out-neighbours (old and new) of the pages whose out-links changed,
+ * at new pages, plus one value shared by all pages when N or the dangling
+ * rank changed. Only those entries are computed. Then pages with a residual
+ * above the threshold are taken from a FIFO queue and pushed: the residual
+ * moves into the rank of the page and d times it is spread over the
+ * out-links. The residual shared by all pages is kept as one scalar and
+ * only pushed over the whole graph when the queue is empty.
+ *
+ * The remaining L1 error is at most tolerance / (1 - d).
+ */
+public class IncrementalPageRank {
+	private final CsrGraph oldGraph;
+	private final double[] oldRanks;
+	private final double dampingFactor;
+
+	// graph after the delta, and its ranks and residuals
+	private CsrGraph graph;
+	private double[] rank;
+	private double[] residual;
+	// residual of every page on top of residual[], see class comment
+	private double uniformResidual;
+	private int pushes;
+	private int uniformPushes;
+
+	public IncrementalPageRank(CsrGraph oldGraph, double[] oldRanks, double dampingFactor) {
+		this.oldGraph = oldGraph;
+		this.oldRanks = oldRanks;
+		this.dampingFactor = dampingFactor;
+	}
+
+	/**
+	 * Edge insertions and deletions, as URL numbers. In the delta file every
+	 * line is "+ source target" or "- source target".
+	 */
+	public static class EdgeDelta {
+		private boolean[] inserted = new boolean[64];
+		private int[] sources = new int[64];
+		private int[] targets = new int[64];
+		private int size = 0;
+
+		public EdgeDelta add(boolean insert, int source, int target) {
+			if (size == sources.length) {
+				inserted = Arrays.copyOf(inserted, size * 2);
+				sources = Arrays.copyOf(sources, size * 2);
+				targets = Arrays.copyOf(targets, size * 2);
+			}
+			inserted[size] = insert;
+			sources[size] = source;
+			targets[size] = target;
+			size++;
+			return this;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public static EdgeDelta read(String file) throws IOException {
+			EdgeDelta delta = new EdgeDelta();
+			BufferedReader in = new BufferedReader(new FileReader(file));
+			try {
+				String line;
+				int lineNumber = 0;
+				while ((line = in.readLine()) != null) {
+					lineNumber++;
+					String[] tokens = line.trim().split("\\s+");
+					if (tokens[0].isEmpty()) {
+						continue;
+					}
+					if (tokens.length != 3 || !(tokens[0].equals("+") || tokens[0].equals("-"))) {
+						throw new IOException(file + ":" + lineNumber + ": expected \"+|- source target\"");
+					}
+					delta.add(tokens[0].equals("+"), Integer.parseInt(tokens[1]), Integer.parseInt(tokens[2]));
+				}
+			} finally {
+				in.close();
+			}
+			return delta;
+		}
+	}
+
+	/**
+	 * Read the ranks of every page of graph from an output file written with
+	 * --output=all ("pageId rank" lines after the "All Page Ranks:" header).
+	 */
+	public static double[] readRanks(String file, CsrGraph graph) throws IOException {
+		CsrGraph.IntIntMap denseIds = denseIds(graph);
+		double[] ranks = new double[graph.getNumPages()];
+		boolean[] seen = new boolean[ranks.length];
+		int found = 0;
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			boolean inRanks = false;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (!inRanks) {
+					inRanks = line.startsWith("All Page Ranks:");
+					continue;
+				}
+				if (line.isEmpty()) {
+					continue;
+				}
+				String[] tokens = line.split("\\s+");
+				int page = denseIds.get(Integer.parseInt(tokens[0]));
+				if (page >= 0 && !seen[page]) {
+					seen[page] = true;
+					found++;
+				}
+				if (page >= 0) {
+					ranks[page] = Double.parseDouble(tokens[1]);
+				}
+			}
+		} finally {
+			in.close();
+		}
+		if (found < ranks.length) {
+			throw new IOException(file + " has ranks for " + found + " of " + ranks.length
+					+ " pages; write it with --output=all");
+		}
+		return ranks;
+	}
+
+	/**
+	 * Build the new graph and the residual created by the changed edges.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if a deleted edge is not in the graph
+	 */
+	public CsrGraph applyDelta(EdgeDelta delta) {
+		// changed out-links, per source URL number
+		Map<Integer, List<Integer>> added = new HashMap<Integer, List<Integer>>();
+		Map<Integer, List<Integer>> removed = new HashMap<Integer, List<Integer>>();
+		for (int i = 0; i < delta.size; i++) {
+			Map<Integer, List<Integer>> changes = delta.inserted[i] ? added : removed;
+			List<Integer> links = changes.get(delta.sources[i]);
+			if (links == null) {
+				links = new ArrayList<Integer>();
+				changes.put(delta.sources[i], links);
+			}
+			links.add(delta.targets[i]);
+		}
+
+		int n = oldGraph.getNumPages();
+		int[] offsets = oldGraph.getOffsets();
+		int[] targets = oldGraph.getTargets();
+		int[] pageIds = oldGraph.getPageIds();
+		CsrGraph.Builder builder = new CsrGraph.Builder();
+		int[] links = new int[16];
+		for (int u = 0; u < n; u++) {
+			int degree = offsets[u + 1] - offsets[u];
+			if (links.length < degree) {
+				links = new int[Math.max(degree, links.length * 2)];
+			}
+			for (int e = 0; e < degree; e++) {
+				links[e] = pageIds[targets[offsets[u] + e]];
+			}
+			List<Integer> newLinks = changedLinks(pageIds[u], links, degree, added, removed);
+			if (newLinks == null) {
+				builder.addPage(pageIds[u], links, 0, degree);
+			} else {
+				builder.addPage(pageIds[u], toArray(newLinks), 0, newLinks.size());
+			}
+		}
+		CsrGraph.IntIntMap oldIds = denseIds(oldGraph);
+		for (Integer source : added.keySet()) {
+			if (oldIds.get(source) < 0) {
+				List<Integer> newLinks = changedLinks(source, links, 0, added, removed);
+				builder.addPage(source, toArray(newLinks), 0, newLinks.size());
+			}
+		}
+		for (Integer source : removed.keySet()) {
+			if (oldIds.get(source) < 0) {
+				throw new IllegalArgumentException("Deleted edge from page " + source
+						+ " which is not in the graph");
+			}
+		}
+		graph = builder.build();
+
+		seedResidual(added, removed, oldIds);
+		return graph;
+	}
+
+	// out-links of source after the delta, null if they did not change
+	private static List<Integer> changedLinks(int source, int[] links, int degree,
+			Map<Integer, List<Integer>> added, Map<Integer, List<Integer>> removed) {
+		List<Integer> add = added.get(source);
+		List<Integer> remove = removed.get(source);
+		if (add == null && remove == null) {
+			return null;
+		}
+		List<Integer> result = new ArrayList<Integer>(degree + (add == null ? 0 : add.size()));
+		for (int e = 0; e < degree; e++) {
+			result.add(links[e]);
+		}
+		if (remove != null) {
+			for (Integer target : remove) {
+				if (!result.remove(target)) {
+					throw new IllegalArgumentException("Deleted edge " + source + " -> " + target
+							+ " is not in the graph");
+				}
+			}
+		}
+		if (add != null) {
+			result.addAll(add);
+		}
+		return result;
+	}
+
+	private void seedResidual(Map<Integer, List<Integer>> added, Map<Integer, List<Integer>> removed,
+			CsrGraph.IntIntMap oldIds) {
+		int oldN = oldGraph.getNumPages();
+		int n = graph.getNumPages();
+		double d = dampingFactor;
+		CsrGraph.IntIntMap newIds = denseIds(graph);
+		int[] oldPageIds = oldGraph.getPageIds();
+		int[] oldToNew = new int[oldN];
+		for (int u = 0; u < oldN; u++) {
+			oldToNew[u] = newIds.get(oldPageIds[u]);
+		}
+
+		// warm start: previous ranks, 0 for new pages
+		rank = new double[n];
+		for (int u = 0; u < oldN; u++) {
+			rank[oldToNew[u]] = oldRanks[u];
+		}
+		residual = new double[n];
+
+		double oldDangling = 0.0;
+		for (int u : oldGraph.danglingPages()) {
+			oldDangling += oldRanks[u];
+		}
+		double newDangling = 0.0;
+		for (int v : graph.danglingPages()) {
+			newDangling += rank[v];
+		}
+		// teleport + spread dangling rank, the same for every page
+		double oldBase = ((1 - d) + d * oldDangling) / oldN;
+		double newBase = ((1 - d) + d * newDangling) / n;
+		uniformResidual = newBase - oldBase;
+
+		boolean[] isOld = new boolean[n];
+		for (int u = 0; u < oldN; u++) {
+			isOld[oldToNew[u]] = true;
+		}
+		for (int v = 0; v < n; v++) {
+			if (!isOld[v]) {
+				residual[v] += oldBase;
+			}
+		}
+
+		Set<Integer> changed = new HashSet<Integer>(added.keySet());
+		changed.addAll(removed.keySet());
+		int[] offsets = graph.getOffsets();
+		int[] targets = graph.getTargets();
+		int[] oldOffsets = oldGraph.getOffsets();
+		int[] oldTargets = oldGraph.getTargets();
+		for (Integer source : changed) {
+			int newSource = newIds.get(source);
+			double sourceRank = rank[newSource];
+			int oldSource = oldIds.get(source);
+			if (oldSource >= 0 && oldOffsets[oldSource + 1] > oldOffsets[oldSource]) {
+				double share = d * sourceRank / (oldOffsets[oldSource + 1] - oldOffsets[oldSource]);
+				for (int e = oldOffsets[oldSource]; e < oldOffsets[oldSource + 1]; e++) {
+					residual[oldToNew[oldTargets[e]]] -= share;
+				}
+			}
+			if (offsets[newSource + 1] > offsets[newSource]) {
+				double share = d * sourceRank / (offsets[newSource + 1] - offsets[newSource]);
+				for (int e = offsets[newSource]; e < offsets[newSource + 1]; e++) {
+					residual[targets[e]] += share;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Push residuals until no page has more than tolerance / N left.
+	 *
+	 * @return the ranks of every page of the new graph, by dense id
+	 */
+	public double[] update(double tolerance) {
+		int n = graph.getNumPages();
+		int[] offsets = graph.getOffsets();
+		int[] targets = graph.getTargets();
+		double threshold = tolerance / n;
+
+		// FIFO of pages whose residual is above the threshold
+		int[] queue = new int[n];
+		boolean[] queued = new boolean[n];
+		int head = 0;
+		int queueSize = 0;
+		for (int v = 0; v < n; v++) {
+			if (Math.abs(residual[v]) > threshold) {
+				queue[(head + queueSize++) % n] = v;
+				queued[v] = true;
+			}
+		}
+
+		while (true) {
+			if (queueSize == 0) {
+				// the shared residual touches every page, so it is only
+				// pushed once the queue is drained
+				if (Math.abs(uniformResidual) <= threshold) {
+					break;
+				}
+				pushUniform();
+				for (int v = 0; v < n; v++) {
+					if (Math.abs(residual[v]) > threshold) {
+						queue[queueSize++] = v;
+						queued[v] = true;
+					}
+				}
+				head = 0;
+				continue;
+			}
+			int u = queue[head];
+			head = (head + 1) % n;
+			queueSize--;
+			queued[u] = false;
+
+			double push = residual[u];
+			residual[u] = 0.0;
+			rank[u] += push;
+			pushes++;
+			int degree = offsets[u + 1] - offsets[u];
+			if (degree == 0) {
+				uniformResidual += dampingFactor * push / n;
+				continue;
+			}
+			double share = dampingFactor * push / degree;
+			for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+				int v = targets[e];
+				residual[v] += share;
+				if (!queued[v] && Math.abs(residual[v]) > threshold) {
+					queue[(head + queueSize++) % n] = v;
+					queued[v] = true;
+				}
+			}
+		}
+		// what is left of the shared residual is below the threshold
+		for (int v = 0; v < n; v++) {
+			rank[v] += uniformResidual;
+		}
+		uniformResidual = 0.0;
+		return rank;
+	}
+
+	// push the residual shared by all pages over the whole graph
+	private void pushUniform() {
+		int n = graph.getNumPages();
+		int[] offsets = graph.getOffsets();
+		int[] targets = graph.getTargets();
+		double push = uniformResidual;
+		double dangling = 0.0;
+		for (int u = 0; u < n; u++) {
+			rank[u] += push;
+			int degree = offsets[u + 1] - offsets[u];
+			if (degree == 0) {
+				dangling += push;
+				continue;
+			}
+			double share = dampingFactor * push / degree;
+			for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+				residual[targets[e]] += share;
+			}
+		}
+		uniformResidual = dampingFactor * dangling / n;
+		uniformPushes++;
+	}
+
+	public CsrGraph getGraph() {
+		return graph;
+	}
+
+	// number of single page pushes done by update()
+	public int getPushes() {
+		return pushes;
+	}
+
+	// number of times the shared residual was pushed over the whole graph
+	public int getUniformPushes() {
+		return uniformPushes;
+	}
+
+	private static CsrGraph.IntIntMap denseIds(CsrGraph graph) {
+		int[] pageIds = graph.getPageIds();
+		CsrGraph.IntIntMap ids = new CsrGraph.IntIntMap(pageIds.length);
+		for (int page = 0; page < pageIds.length; page++) {
+			ids.put(pageIds[page], page);
+		}
+		return ids;
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+}
@@ -0,0 +1,198 @@
+package com.iub.fall2016.ds.project1;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Loads the text adjacency list by memory mapping the input file and parsing
+ * the page numbers straight from the mapped bytes, without creating a String
+ * per line or per token.
+ *
+ * The file is cut into chunks whose boundaries are moved forward to the next
+ * line break, so every line belongs to exactly one chunk. Chunks are parsed
+ * in parallel and then handed to the CSR builder in file order.
+ */
+public class MappedGraphLoader {
+	// upper bound for one mapped chunk, well below the 2GB mapping limit
+	private static final long MAX_CHUNK_BYTES = 1L << 28;
+	// chunks per thread, so that uneven lines still keep every thread busy
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private final int threads;
+
+	public MappedGraphLoader(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+	public CsrGraph load(String inputFile) throws IOException {
+		CsrGraph.Builder builder = new CsrGraph.Builder();
+		RandomAccessFile file = new RandomAccessFile(inputFile, "r");
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			FileChannel channel = file.getChannel();
+			long[] bounds = chunkBounds(channel);
+
+			List<Callable<ParsedChunk>> tasks = new ArrayList<Callable<ParsedChunk>>();
+			for (int i = 0; i + 1 < bounds.length; i++) {
+				if (bounds[i + 1] > bounds[i]) {
+					tasks.add(new ChunkParser(channel, bounds[i], bounds[i + 1]));
+				}
+			}
+
+			for (Future<ParsedChunk> result : pool.invokeAll(tasks)) {
+				result.get().addTo(builder);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading " + inputFile, e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Failed to parse " + inputFile, e.getCause());
+		} finally {
+			pool.shutdown();
+			file.close();
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Split the file in roughly equal chunks and align every inner boundary to
+	 * the byte after the next '\n'.
+	 */
+	private long[] chunkBounds(FileChannel channel) throws IOException {
+		long size = channel.size();
+		long chunks = Math.max((long) threads * CHUNKS_PER_THREAD, (size + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES);
+		chunks = Math.max(1, Math.min(chunks, size / 64 + 1));
+
+		long[] bounds = new long[(int) chunks + 1];
+		bounds[(int) chunks] = size;
+		ByteBuffer probe = ByteBuffer.allocate(4096);
+		for (int i = 1; i < chunks; i++) {
+			long position = Math.max(bounds[i - 1], size / chunks * i);
+			bounds[i] = nextLineStart(channel, position, probe);
+		}
+		return bounds;
+	}
+
+	private static long nextLineStart(FileChannel channel, long position, ByteBuffer probe) throws IOException {
+		long size = channel.size();
+		while (position < size) {
+			probe.clear();
+			int read = channel.read(probe, position);
+			if (read <= 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (probe.get(i) == '\n') {
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	/**
+	 * Parses the lines of one chunk into flat int arrays: the source page and
+	 * out-link count of every line and all out-links back to back.
+	 */
+	private static class ChunkParser implements Callable<ParsedChunk> {
+		private final FileChannel channel;
+		private final long start;
+		private final long end;
+
+		ChunkParser(FileChannel channel, long start, long end) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public ParsedChunk call() throws IOException {
+			MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+			int length = bytes.limit();
+			ParsedChunk chunk = new ParsedChunk(length / 8 + 16);
+
+			long value = 0;
+			boolean inNumber = false;
+			int tokens = 0;
+			for (int i = 0; i <= length; i++) {
+				byte b = i < length ? bytes.get(i) : (byte) '\n';
+				if (b >= '0' && b <= '9') {
+					value = value * 10 + (b - '0');
+					if (value > Integer.MAX_VALUE) {
+						throw new IOException("Number too large for a page id at byte " + (start + i));
+					}
+					inNumber = true;
+					continue;
+				}
+				if (inNumber) {
+					if (tokens == 0) {
+						chunk.startLine((int) value);
+					} else {
+						chunk.addLink((int) value);
+					}
+					tokens++;
+					value = 0;
+					inNumber = false;
+				}
+				if (b == '\n') {
+					tokens = 0;
+				} else if (b != ' ' && b != '\t' && b != '\r') {
+					throw new IOException("Unexpected character '" + (char) b + "' at byte " + (start + i));
+				}
+			}
+			return chunk;
+		}
+	}
+
+	private static class ParsedChunk {
+		private int[] sources = new int[256];
+		private int[] degrees = new int[256];
+		private int lines = 0;
+		private int[] links;
+		private int numLinks = 0;
+
+		ParsedChunk(int expectedLinks) {
+			links = new int[expectedLinks];
+		}
+
+		void startLine(int source) {
+			if (lines == sources.length) {
+				sources = Arrays.copyOf(sources, lines * 2);
+				degrees = Arrays.copyOf(degrees, lines * 2);
+			}
+			sources[lines] = source;
+			degrees[lines] = 0;
+			lines++;
+		}
+
+		void addLink(int target) {
+			if (numLinks == links.length) {
+				links = Arrays.copyOf(links, numLinks * 2);
+			}
+			links[numLinks++] = target;
+			degrees[lines - 1]++;
+		}
+
+		void addTo(CsrGraph.Builder builder) {
+			int from = 0;
+			for (int line = 0; line < lines; line++) {
+				builder.addPage(sources[line], links, from, degrees[line]);
+				from += degrees[line];
+			}
+		}
+	}
+}
@@ -0,0 +1,192 @@
+package com.iub.fall2016.ds.project1;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Pull based, multi-threaded page rank iteration.
+ *
+ * The in-edge index (transpose of the graph) is built once. Every iteration
+ * first computes the contribution rank[u] / outDegree(u) of each page and
+ * then lets each page sum the contributions of its in-neighbours. Each
+ * thread only writes the entries of its own page range, so no locking and
+ * no shared map are needed. The rank of dangling pages is summed while the
+ * contributions are computed and added to every page as one scalar.
+ */
+public class ParallelPageRank {
+	// split a range further while it has more in-edges than this
+	private static final int EDGE_GRAIN = 1 << 14;
+	// but never below this many pages
+	private static final int PAGE_GRAIN = 1 << 10;
+
+	private final CsrGraph graph;
+	// in-links of every page
+	private final CsrGraph inGraph;
+	private final ForkJoinPool pool;
+	// rank[u] / outDegree(u) for the current iteration
+	private final double[] contributions;
+
+	public ParallelPageRank(CsrGraph graph, int threads) {
+		this.graph = graph;
+		this.inGraph = graph.transpose();
+		this.pool = new ForkJoinPool(Math.max(1, threads));
+		this.contributions = new double[graph.getNumPages()];
+	}
+
+	/**
+	 * One Jacobi iteration: nextRank = (1 - d) / N + d * (sum of in-neighbour
+	 * contributions + dangling rank / N), computed from rank.
+	 *
+	 * @return the change between rank and nextRank, measured with norm
+	 */
+	public double iterate(double[] rank, double[] nextRank, double dampingFactor, ResidualNorm norm) {
+		int n = graph.getNumPages();
+		ContributionTask contribution = new ContributionTask(rank, norm, 0, n);
+		pool.invoke(contribution);
+		double base = (1 - dampingFactor) / n + dampingFactor * contribution.result / n;
+		PullTask pull = new PullTask(rank, nextRank, base, dampingFactor, norm, 0, n);
+		pool.invoke(pull);
+		return pull.result;
+	}
+
+	public CsrGraph getInGraph() {
+		return inGraph;
+	}
+
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Recursively halves a page range until it is small enough to be worked
+	 * on by one thread. Ranges are split on the in-edge count so that pages
+	 * with huge in-degree do not end up in one oversized leaf.
+	 */
+	private abstract class RangeTask extends RecursiveAction {
+		final ResidualNorm norm;
+		final int from;
+		final int to;
+		// value of this range, filled in by compute()
+		double result;
+
+		RangeTask(ResidualNorm norm, int from, int to) {
+			this.norm = norm;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			int[] inOffsets = inGraph.getOffsets();
+			if (to - from <= PAGE_GRAIN || inOffsets[to] - inOffsets[from] <= EDGE_GRAIN) {
+				result = computeRange();
+				return;
+			}
+			int mid = splitPoint(inOffsets);
+			RangeTask left = subTask(from, mid);
+			RangeTask right = subTask(mid, to);
+			invokeAll(left, right);
+			result = combine(left.result, right.result);
+		}
+
+		// merge the results of two halves, by default as residuals
+		double combine(double left, double right) {
+			return norm.combine(left, right);
+		}
+
+		// first page whose in-edges start at or after the middle edge
+		private int splitPoint(int[] inOffsets) {
+			int middleEdge = (inOffsets[from] + inOffsets[to]) >>> 1;
+			int lo = from + 1;
+			int hi = to - 1;
+			while (lo < hi) {
+				int m = (lo + hi) >>> 1;
+				if (inOffsets[m] < middleEdge) {
+					lo = m + 1;
+				} else {
+					hi = m;
+				}
+			}
+			return lo;
+		}
+
+		abstract double computeRange();
+
+		abstract RangeTask subTask(int from, int to);
+	}
+
+	// computes the contributions and returns the rank held by dangling pages
+	private class ContributionTask extends RangeTask {
+		private final double[] rank;
+
+		ContributionTask(double[] rank, ResidualNorm norm, int from, int to) {
+			super(norm, from, to);
+			this.rank = rank;
+		}
+
+		@Override
+		double computeRange() {
+			int[] offsets = graph.getOffsets();
+			double dangling = 0.0;
+			for (int page = from; page < to; page++) {
+				int degree = offsets[page + 1] - offsets[page];
+				if (degree == 0) {
+					contributions[page] = 0.0;
+					dangling += rank[page];
+				} else {
+					contributions[page] = rank[page] / degree;
+				}
+			}
+			return dangling;
+		}
+
+		@Override
+		double combine(double left, double right) {
+			return left + right;
+		}
+
+		@Override
+		RangeTask subTask(int from, int to) {
+			return new ContributionTask(rank, norm, from, to);
+		}
+	}
+
+	// computes nextRank and returns the residual
+	private class PullTask extends RangeTask {
+		private final double[] rank;
+		private final double[] nextRank;
+		// teleport plus the evenly spread dangling rank, the same for all pages
+		private final double base;
+		private final double dampingFactor;
+
+		PullTask(double[] rank, double[] nextRank, double base, double dampingFactor, ResidualNorm norm,
+				int from, int to) {
+			super(norm, from, to);
+			this.rank = rank;
+			this.nextRank = nextRank;
+			this.base = base;
+			this.dampingFactor = dampingFactor;
+		}
+
+		@Override
+		double computeRange() {
+			int[] inOffsets = inGraph.getOffsets();
+			int[] sources = inGraph.getTargets();
+			double rangeResidual = 0.0;
+			for (int page = from; page < to; page++) {
+				double sum = 0.0;
+				for (int e = inOffsets[page]; e < inOffsets[page + 1]; e++) {
+					sum += contributions[sources[e]];
+				}
+				nextRank[page] = base + dampingFactor * sum;
+				rangeResidual = norm.accumulate(rangeResidual, nextRank[page] - rank[page]);
+			}
+			return rangeResidual;
+		}
+
+		@Override
+		RangeTask subTask(int from, int to) {
+			return new PullTask(rank, nextRank, base, dampingFactor, norm, from, to);
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package com.iub.fall2016.ds.project1;
+
+/**
+ * Norm used to measure how much the rank vector changed in one iteration.
+ */
+public enum ResidualNorm {
+	// sum of absolute changes
+	L1,
+	// largest absolute change of any page
+	LINF;
+
+	public double accumulate(double residual, double change) {
+		change = Math.abs(change);
+		if (this == L1) {
+			return residual + change;
+		}
+		return change > residual ? change : residual;
+	}
+
+	// combine the residuals of two disjoint page ranges
+	public double combine(double a, double b) {
+		if (this == L1) {
+			return a + b;
+		}
+		return Math.max(a, b);
+	}
+
+	public static ResidualNorm parse(String name) {
+		if (name.equalsIgnoreCase("l1")) {
+			return L1;
+		}
+		if (name.equalsIgnoreCase("linf")) {
+			return LINF;
+		}
+		throw new IllegalArgumentException("Unknown norm: " + name);
+	}
+}
@@ -1,29 +1,13 @@
 package com.iub.fall2016.ds.project1;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.Charset;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
+import java.util.Arrays;
 
 public class SequentialPageRank {
-	// adjacency matrix read from file
-	private HashMap<Integer, ArrayList<Integer>> adjList = new HashMap<Integer, ArrayList<Integer>>();
+	// adjacency matrix read from file, in compressed sparse row form
+	private CsrGraph graph;
 	// input file name
 	private String inputFile = "";
 	// output file name
@@ -34,20 +18,49 @@ public class SequentialPageRank {
 	private double dampingFactor = 0.85;
 	// number of URLs
 	private int size = 0;
-	// calculating rank values
-	private HashMap<Integer, Double> rankValues = new HashMap<Integer, Double>();
-	private Set<Integer> allSource = new HashSet<Integer>();
-	// adjacency matrix read from file
-	private HashMap<Integer, ArrayList<Integer>> incomingAdj = new HashMap<Integer, ArrayList<Integer>>();
-
-	private HashMap<Integer, Double> baseRank = new HashMap<Integer, Double>();
+	// rank value of every page, indexed by dense page id
+	private double[] rankValues;
+	// ranks being computed in the current iteration, swapped with rankValues
+	private double[] nextRankValues;
+	// push: single threaded scatter over out-links, pull: fork/join gather
+	// over in-links
+	private String mode = "push";
+	// jacobi: new ranks from the previous iteration (mode push or pull),
+	// gauss-seidel: in-place sweeps, see GaussSeidelPageRank
+	private String solver = "jacobi";
+	// worker threads used by the pull mode and the gauss-seidel solver
+	private int threads = Runtime.getRuntime().availableProcessors();
+	// stop once the residual drops below this value, 0 runs all iterations
+	private double tolerance = 0.0;
+	// norm used for the residual
+	private ResidualNorm norm = ResidualNorm.L1;
+	// number of iterations actually done by calculatePageRank
+	private int iterationsDone = 0;
+	// number of top ranked pages printed
+	private int topCount = 10;
+	// also stream the rank of every page to the output file
+	private boolean outputAll = false;
+	// incremental mode: edge changes applied to the input graph, the
+	// --output=all file of the previous run, and where to save the new graph
+	private String deltaFile = null;
+	private String previousFile = null;
+	private String updatedGraphFile = null;
+	private IncrementalPageRank incremental = null;
 
 	private StringBuffer finalOutput = new StringBuffer();
 
 	/**
 	 * Parse the command line arguments and update the instance variables.
 	 * Command line arguments are of the form <input_file_name>
-	 * <output_file_name> <num_iters> <damp_factor>
+	 * <output_file_name> <num_iters> <damp_factor> [--option=value ...]
+	 *
+	 * Options: --mode=push|pull, --solver=jacobi|gauss-seidel, --threads=<n>,
+	 * --tolerance=<eps>, --norm=l1|linf, --top=<k>, --output=top|all. With a
+	 * tolerance, num_iters is the maximum number of iterations.
+	 *
+	 * Incremental mode: --delta=<edge_file> --previous=<ranks_file>
+	 * [--updated-graph=<binary_file>] updates the ranks of the previous run
+	 * after the edge changes, see IncrementalPageRank. It needs a tolerance.
 	 *
 	 * @param args
 	 *            arguments
@@ -57,6 +70,51 @@ public class SequentialPageRank {
 		outputFile = args[1];
 		iterations = Integer.parseInt(args[2]);
 		dampingFactor = Double.parseDouble(args[3]);
+		for (int i = 4; i < args.length; i++) {
+			int eq = args[i].indexOf('=');
+			if (!args[i].startsWith("--") || eq < 0) {
+				throw new IllegalArgumentException("Options must be of the form --name=value: " + args[i]);
+			}
+			parseOption(args[i].substring(2, eq), args[i].substring(eq + 1));
+		}
+	}
+
+	private void parseOption(String name, String value) {
+		if (name.equals("mode")) {
+			if (!value.equals("push") && !value.equals("pull")) {
+				throw new IllegalArgumentException("Unknown mode: " + value);
+			}
+			mode = value;
+		} else if (name.equals("solver")) {
+			if (!value.equals("jacobi") && !value.equals("gauss-seidel")) {
+				throw new IllegalArgumentException("Unknown solver: " + value);
+			}
+			solver = value;
+		} else if (name.equals("threads")) {
+			threads = Integer.parseInt(value);
+		} else if (name.equals("tolerance")) {
+			tolerance = Double.parseDouble(value);
+		} else if (name.equals("norm")) {
+			norm = ResidualNorm.parse(value);
+		} else if (name.equals("top")) {
+			topCount = Integer.parseInt(value);
+			if (topCount < 0) {
+				throw new IllegalArgumentException("--top must not be negative: " + value);
+			}
+		} else if (name.equals("output")) {
+			if (!value.equals("top") && !value.equals("all")) {
+				throw new IllegalArgumentException("Unknown output: " + value);
+			}
+			outputAll = value.equals("all");
+		} else if (name.equals("delta")) {
+			deltaFile = value;
+		} else if (name.equals("previous")) {
+			previousFile = value;
+		} else if (name.equals("updated-graph")) {
+			updatedGraphFile = value;
+		} else {
+			throw new IllegalArgumentException("Unknown option: --" + name);
+		}
 	}
 
 	/**
@@ -69,172 +127,205 @@ public class SequentialPageRank {
 	 * referred by the first URL. For example the page represented by the 0 URL
 	 * doesn't refer any other URL. Page represented by 1 refer the URL 2.
 	 *
+	 * The file is memory mapped and parsed in parallel by MappedGraphLoader.
+	 * A graph converted with BinaryGraphFormat is recognised by its header
+	 * and opened without parsing.
+	 *
 	 * @throws java.io.IOException
 	 *             if an error occurs
 	 */
 	public void loadInput() throws IOException {
+		long start = System.nanoTime();
+		if (BinaryGraphFormat.isBinary(inputFile)) {
+			setGraph(BinaryGraphFormat.read(inputFile));
+		} else {
+			setGraph(new MappedGraphLoader(threads).load(inputFile));
+		}
+		System.out.println("Loaded " + size + " pages, " + graph.getNumEdges() + " links in "
+				+ ((System.nanoTime() - start) / 1e6) + " ms");
+		if (deltaFile != null) {
+			loadDelta();
+		}
+	}
 
-		boolean isSourceLink = true;
-		int source = 0;
-		double initialRank = 0.0;
-		ArrayList<Integer> linkList = new ArrayList<Integer>();
-		ArrayList<Integer> incomingLinkList = new ArrayList<Integer>();
-		String line = null;
-		String[] lineString = null;
-
-		BufferedReader reader = new BufferedReader(
-				new InputStreamReader(new FileInputStream(new File(inputFile)), Charset.forName("UTF-8")));
-		int c = 0;
-		while ((line = reader.readLine()) != null) {
-			char character = (char) c;
-			lineString = line.split(" ");
+	// apply the edge changes and continue with the new graph
+	private void loadDelta() throws IOException {
+		if (previousFile == null || tolerance <= 0) {
+			throw new IllegalArgumentException("--delta needs --previous=<ranks_file> and --tolerance=<eps>");
+		}
+		long start = System.nanoTime();
+		IncrementalPageRank.EdgeDelta delta = IncrementalPageRank.EdgeDelta.read(deltaFile);
+		incremental = new IncrementalPageRank(graph, IncrementalPageRank.readRanks(previousFile, graph),
+				dampingFactor);
+		CsrGraph updated = incremental.applyDelta(delta);
+		setGraph(updated);
+		System.out.println("Applied " + delta.size() + " edge changes: " + size + " pages, "
+				+ graph.getNumEdges() + " links in " + ((System.nanoTime() - start) / 1e6) + " ms");
+		if (updatedGraphFile != null) {
+			BinaryGraphFormat.write(updated, updatedGraphFile);
+		}
+	}
 
-			for (int i = 0; null != lineString && i < lineString.length; i++) {
+	/**
+	 * Use an already built graph and set the initial Pagerank of every page to
+	 * 1 / total number of pages.
+	 */
+	public void setGraph(CsrGraph graph) {
+		this.graph = graph;
+		this.size = graph.getNumPages();
+		rankValues = new double[size];
+		nextRankValues = new double[size];
+		Arrays.fill(rankValues, 1.0 / size);
+	}
 
-				if (i == 0) {
+	/**
+	 * Iterate and calculate the page rank values, until the residual drops
+	 * below the tolerance or the number of iterations is reached. For the
+	 * Jacobi solver both rank tables are allocated once by loadInput and
+	 * swapped after every iteration; the Gauss-Seidel solver updates
+	 * rankValues in place. The residual and wall time of every iteration are
+	 * printed.
+	 */
+	public void calculatePageRank() {
+		if (incremental != null) {
+			updatePageRank();
+			return;
+		}
+		ParallelPageRank parallel = null;
+		GaussSeidelPageRank gaussSeidel = null;
+		if (solver.equals("gauss-seidel")) {
+			gaussSeidel = new GaussSeidelPageRank(graph, threads);
+		} else if (mode.equals("pull")) {
+			parallel = new ParallelPageRank(graph, threads);
+		}
 
-					source = Integer.parseInt(lineString[i]);
-					adjList.put(source, linkList);
-					allSource.add(source);
+		try {
+			double residual = Double.MAX_VALUE;
+			iterationsDone = 0;
+			while (iterationsDone < iterations && residual >= tolerance) {
+				long start = System.nanoTime();
+				if (gaussSeidel != null) {
+					residual = gaussSeidel.sweep(rankValues, dampingFactor, norm);
 				} else {
-
-					linkList.add(Integer.parseInt(lineString[i]));
+					double[] rank = rankValues;
+					double[] nextRank = nextRankValues;
+					if (parallel != null) {
+						residual = parallel.iterate(rank, nextRank, dampingFactor, norm);
+					} else {
+						residual = pushIteration(rank, nextRank);
+					}
+					rankValues = nextRank;
+					nextRankValues = rank;
 				}
-			}
-
-			linkList = new ArrayList<Integer>();
-
-			// Do something with your character
-		}
-
-		// Set initial Pagerank
-
-		Iterator it = adjList.entrySet().iterator();
-		initialRank = 1.0 / adjList.size();
-
-		ArrayList<Integer> allSourceList = new ArrayList<Integer>(allSource);
-		double tempVal = 0.0;
-
-		while (it.hasNext()) {
-
-			Map.Entry pair = (Map.Entry) it.next();
+				iterationsDone++;
 
-			linkList = (ArrayList<Integer>) pair.getValue();
-
-			if (0 == linkList.size()) {
-				adjList.put((Integer) pair.getKey(), allSourceList);
-				linkList = allSourceList;
+				System.out.println("Iteration " + iterationsDone + ": residual (" + norm + ") = " + residual
+						+ ", time = " + ((System.nanoTime() - start) / 1e6) + " ms");
 			}
-
-			rankValues.put((Integer) pair.getKey(), initialRank);
-
-			for (int val : linkList) {
-
-				tempVal = 0.0;
-
-				if (baseRank.containsKey(val))
-					tempVal = baseRank.get(val);
-
-				tempVal += initialRank / linkList.size();
-
-				baseRank.put(val, tempVal);
+			if (tolerance > 0) {
+				finalOutput.append(residual < tolerance ? "\nConverged after " : "\nNot converged after ");
+				finalOutput.append(iterationsDone);
+				finalOutput.append(" iterations, residual ");
+				finalOutput.append(residual);
+			}
+		} finally {
+			if (parallel != null) {
+				parallel.shutdown();
+			}
+			if (gaussSeidel != null) {
+				gaussSeidel.shutdown();
 			}
-
 		}
+	}
 
+	// incremental mode: push only the residual created by the changed edges
+	private void updatePageRank() {
+		long start = System.nanoTime();
+		rankValues = incremental.update(tolerance);
+		System.out.println("Incremental update: " + incremental.getPushes() + " pushes, "
+				+ incremental.getUniformPushes() + " full graph pushes, time = "
+				+ ((System.nanoTime() - start) / 1e6) + " ms");
+		finalOutput.append("\nIncremental update, " + incremental.getPushes() + " pushes");
 	}
 
 	/**
-	 * Do fixed number of iterations and calculate the page rank values. You may
-	 * keep the intermediate page rank values in a hash table.
+	 * One push iteration over the graph set by loadInput or setGraph: the
+	 * rank of every page is pushed evenly over its out-links, the rank of
+	 * dangling pages is summed and spread over all pages as one scalar.
+	 * Nothing is printed or allocated.
+	 *
+	 * @return the residual in the configured norm
 	 */
-	public void calculatePageRank() {
-		Iterator it = null;
-		Map.Entry pair = null;
-		List<Integer> tempLinks = null;
-		int source = 0, bufInt = 0;
-		ArrayList<Integer> allSourceList = new ArrayList<Integer>(allSource);
-		double tempValue = 0.0;
-		double initialRank = 0.0;
-
-		double tempPageRank = 0.0;
-
-		for (int i = 0; i < iterations; i++) {
-
-			it = adjList.entrySet().iterator();
-
-			while (it.hasNext()) {
-
-				pair = (Map.Entry) it.next();
-
-				source = (Integer) pair.getKey();
-
-				tempPageRank = baseRank.get(source);
-
-				tempPageRank += (1 - dampingFactor) * 1.0 / adjList.size();
-
-				rankValues.put(source, tempPageRank);
-
-				tempPageRank = 0.0;
-
+	public double pushIteration(double[] rank, double[] nextRank) {
+		int[] offsets = graph.getOffsets();
+		int[] targets = graph.getTargets();
+		Arrays.fill(nextRank, 0.0);
+
+		double dangling = 0.0;
+		for (int page = 0; page < size; page++) {
+			int from = offsets[page];
+			int to = offsets[page + 1];
+			if (from == to) {
+				dangling += rank[page];
+				continue;
 			}
+			double contribution = rank[page] / (to - from);
+			for (int e = from; e < to; e++) {
+				nextRank[targets[e]] += contribution;
+			}
+		}
 
-			it = adjList.entrySet().iterator();
-
-			baseRank = new HashMap<Integer, Double>();
-			while (it.hasNext()) {
-
-				pair = (Map.Entry) it.next();
-
-				tempLinks = (ArrayList<Integer>) pair.getValue();
-
-				initialRank = rankValues.get(pair.getKey());
-
-				for (int val : tempLinks) {
-
-					tempValue = 0.0;
-
-					if (baseRank.containsKey(val))
-						tempValue = baseRank.get(val);
+		double base = (1 - dampingFactor) / size + dampingFactor * dangling / size;
+		double residual = 0.0;
+		for (int page = 0; page < size; page++) {
+			nextRank[page] = base + dampingFactor * nextRank[page];
+			residual = norm.accumulate(residual, nextRank[page] - rank[page]);
+		}
+		return residual;
+	}
 
-					tempValue += initialRank / tempLinks.size();
+	/**
+	 * Rank value of every page, indexed by dense page id. Use
+	 * getGraph().getPageIds() to map back to URL numbers.
+	 */
+	public double[] getRankValues() {
+		return rankValues;
+	}
 
-					baseRank.put(val, tempValue);
-				}
+	public CsrGraph getGraph() {
+		return graph;
+	}
 
-			}
-		}
+	public int getIterationsDone() {
+		return iterationsDone;
 	}
 
 	/**
-	 * Print the pagerank values. Before printing you should sort them according
-	 * to decreasing order. Print all the values to the output file. Print only
-	 * the first 10 values to console.
+	 * Print the pagerank values. The top pages are picked with a bounded heap
+	 * (TopK) instead of sorting every rank, printed to console and written to
+	 * the output file. With --output=all the rank of every page follows, in
+	 * page order.
 	 *
 	 * @throws IOException
 	 *             if an error occurs
 	 */
 	public void printValues() throws IOException {
 
-		Map<Integer, Double> sortedMap = sortByComparator(rankValues, false);
-		Iterator it = sortedMap.entrySet().iterator();
-		Map.Entry pair = null;
-
-		int count = 0;
-
-		finalOutput.append("\nTop 10 Page Ranks: \n");
-		while (it.hasNext() && count < 10) {
+		TopK top = TopK.select(rankValues, 0, size, topCount).sort();
+		int[] pages = top.getPages();
+		double[] values = top.getValues();
+		int[] pageIds = graph.getPageIds();
 
-			count++;
-			pair = (Map.Entry) it.next();
+		finalOutput.append("\nTop " + topCount + " Page Ranks: \n");
+		for (int i = 0; i < top.size(); i++) {
 
-			finalOutput.append(pair.getKey());
+			finalOutput.append(pageIds[pages[i]]);
 			finalOutput.append(" : ");
-			finalOutput.append(pair.getValue());
+			finalOutput.append(values[i]);
 			finalOutput.append("\n");
-			System.out.println(pair.getKey() + " : " + pair.getValue());
+			System.out.println(pageIds[pages[i]] + " : " + values[i]);
 		}
-		
+
 		writeToFile();
 
 	}
@@ -246,9 +337,12 @@ public class SequentialPageRank {
 
 		try {
 			fileWriter = new FileWriter(outputFile);
-			bufferedWriter = new BufferedWriter(fileWriter);
+			bufferedWriter = new BufferedWriter(fileWriter, 1 << 16);
 
 			bufferedWriter.write(finalOutput.toString());
+			if (outputAll) {
+				writeAllRanks(bufferedWriter);
+			}
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -272,6 +366,18 @@ public class SequentialPageRank {
 		}
 	}
 
+	// stream "<page> <rank>" for every page, straight from the rank array
+	private void writeAllRanks(BufferedWriter writer) throws IOException {
+		int[] pageIds = graph.getPageIds();
+		writer.write("\nAll Page Ranks: \n");
+		for (int page = 0; page < size; page++) {
+			writer.write(Integer.toString(pageIds[page]));
+			writer.write(' ');
+			writer.write(Double.toString(rankValues[page]));
+			writer.write('\n');
+		}
+	}
+
 	private void display() {
 
 		finalOutput.append("Iterations: ");
@@ -280,6 +386,14 @@ public class SequentialPageRank {
 		System.out.println("output: " + outputFile);
 		System.out.println("iterations: " + iterations);
 		System.out.println("dampingFactor: " + dampingFactor);
+		if (solver.equals("gauss-seidel")) {
+			System.out.println("solver: gauss-seidel (" + threads + " threads)");
+		} else {
+			System.out.println("mode: " + mode + (mode.equals("pull") ? " (" + threads + " threads)" : ""));
+		}
+		if (tolerance > 0) {
+			System.out.println("tolerance: " + tolerance + " (" + norm + ")");
+		}
 	}
 
 	public static void main(String[] args) throws IOException {
@@ -298,29 +412,4 @@ public class SequentialPageRank {
 		System.out.println(((end_time - start_time) / 1e6));
 	}
 
-	private static Map<Integer, Double> sortByComparator(Map<Integer, Double> unsortMap, final boolean order) {
-
-		List<Entry<Integer, Double>> list = new LinkedList<Entry<Integer, Double>>(unsortMap.entrySet());
-
-		// Sorting the list based on values
-		Collections.sort(list, new Comparator<Entry<Integer, Double>>() {
-			public int compare(Entry<Integer, Double> o1, Entry<Integer, Double> o2) {
-				if (order) {
-					return o1.getValue().compareTo(o2.getValue());
-				} else {
-					return o2.getValue().compareTo(o1.getValue());
-
-				}
-			}
-		});
-
-		// Maintaining insertion order with the help of LinkedList
-		Map<Integer, Double> sortedMap = new LinkedHashMap<Integer, Double>();
-		for (Entry<Integer, Double> entry : list) {
-			sortedMap.put(entry.getKey(), entry.getValue());
-		}
-
-		return sortedMap;
-	}
-
 }
@@ -0,0 +1,124 @@
+package com.iub.fall2016.ds.project1;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Convergence report: runs the Jacobi (pull) solver and the Gauss-Seidel
+ * solver, sequential and with all threads, on the same graph until the
+ * residual drops below the tolerance, and prints the number of sweeps, the
+ * time and how far the result is from the Jacobi ranks.
+ *
+ * SolverComparison <input_file_name> [tolerance] [threads] [damp_factor]
+ */
+public class SolverComparison {
+	// give up after this many sweeps
+	private static final int MAX_SWEEPS = 10000;
+
+	private final CsrGraph graph;
+	private final double tolerance;
+	private final double dampingFactor;
+	private final ResidualNorm norm = ResidualNorm.L1;
+
+	public SolverComparison(CsrGraph graph, double tolerance, double dampingFactor) {
+		this.graph = graph;
+		this.tolerance = tolerance;
+		this.dampingFactor = dampingFactor;
+	}
+
+	/** Result of one solver run. */
+	public static class Run {
+		public final String solver;
+		public final int sweeps;
+		public final double residual;
+		public final double millis;
+		public final double[] ranks;
+
+		Run(String solver, int sweeps, double residual, double millis, double[] ranks) {
+			this.solver = solver;
+			this.sweeps = sweeps;
+			this.residual = residual;
+			this.millis = millis;
+			this.ranks = ranks;
+		}
+	}
+
+	public Run jacobi(int threads) {
+		ParallelPageRank parallel = new ParallelPageRank(graph, threads);
+		try {
+			double[] rank = initialRanks();
+			double[] next = new double[rank.length];
+			long start = System.nanoTime();
+			double residual = Double.MAX_VALUE;
+			int sweeps = 0;
+			while (sweeps < MAX_SWEEPS && residual >= tolerance) {
+				residual = parallel.iterate(rank, next, dampingFactor, norm);
+				double[] t = rank;
+				rank = next;
+				next = t;
+				sweeps++;
+			}
+			return new Run("jacobi (" + threads + " threads)", sweeps, residual, (System.nanoTime() - start) / 1e6,
+					rank);
+		} finally {
+			parallel.shutdown();
+		}
+	}
+
+	public Run gaussSeidel(int threads) {
+		GaussSeidelPageRank gaussSeidel = new GaussSeidelPageRank(graph, threads);
+		try {
+			double[] rank = initialRanks();
+			long start = System.nanoTime();
+			double residual = Double.MAX_VALUE;
+			int sweeps = 0;
+			while (sweeps < MAX_SWEEPS && residual >= tolerance) {
+				residual = gaussSeidel.sweep(rank, dampingFactor, norm);
+				sweeps++;
+			}
+			return new Run("gauss-seidel (" + threads + " threads)", sweeps, residual,
+					(System.nanoTime() - start) / 1e6, rank);
+		} finally {
+			gaussSeidel.shutdown();
+		}
+	}
+
+	private double[] initialRanks() {
+		double[] rank = new double[graph.getNumPages()];
+		Arrays.fill(rank, 1.0 / rank.length);
+		return rank;
+	}
+
+	// L1 distance between two rank vectors
+	static double distance(double[] a, double[] b) {
+		double sum = 0.0;
+		for (int i = 0; i < a.length; i++) {
+			sum += Math.abs(a[i] - b[i]);
+		}
+		return sum;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: SolverComparison <input_file_name> [tolerance] [threads] [damp_factor]");
+			System.exit(-1);
+		}
+		double tolerance = args.length > 1 ? Double.parseDouble(args[1]) : 1e-10;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		double dampingFactor = args.length > 3 ? Double.parseDouble(args[3]) : 0.85;
+
+		CsrGraph graph = BinaryGraphFormat.isBinary(args[0]) ? BinaryGraphFormat.read(args[0])
+				: new MappedGraphLoader(threads).load(args[0]);
+		System.out.println(graph.getNumPages() + " pages, " + graph.getNumEdges() + " links, tolerance "
+				+ tolerance + " (L1), damping factor " + dampingFactor);
+
+		SolverComparison comparison = new SolverComparison(graph, tolerance, dampingFactor);
+		Run[] runs = { comparison.jacobi(threads), comparison.gaussSeidel(1), comparison.gaussSeidel(threads) };
+		System.out.println(String.format("%-28s %8s %14s %12s %14s", "solver", "sweeps", "residual", "time ms",
+				"L1 to jacobi"));
+		for (Run run : runs) {
+			System.out.println(String.format("%-28s %8d %14.6e %12.2f %14.6e", run.solver, run.sweeps, run.residual,
+					run.millis, distance(run.ranks, runs[0].ranks)));
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package com.iub.fall2016.ds.project1;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the batched personalized page rank against single queries and the
+ * global page rank.
+ */
+public class BatchedPageRankTest extends TestCase {
+
+	private static double[] run(CsrGraph graph, int[][] seeds, int threads) {
+		BatchedPageRank batched = new BatchedPageRank(graph, threads);
+		try {
+			return batched.compute(seeds, 0.85, 50, 0.0);
+		} finally {
+			batched.shutdown();
+		}
+	}
+
+	public void testAllPagesSeedIsGlobalRank() {
+		CsrGraph graph = SequentialPageRankTest.readmeGraph();
+		int[] all = new int[graph.getNumPages()];
+		for (int page = 0; page < all.length; page++) {
+			all[page] = page;
+		}
+		double[] ranks = run(graph, new int[][] { all }, 2);
+
+		SequentialPageRank pr = SequentialPageRankTest.solver();
+		pr.calculatePageRank();
+		double[] expected = pr.getRankValues();
+		for (int page = 0; page < expected.length; page++) {
+			assertEquals(expected[page], ranks[page], 1e-12);
+		}
+	}
+
+	public void testBatchMatchesSingleQueries() {
+		CsrGraph graph = SequentialPageRankTest.readmeGraph();
+		int n = graph.getNumPages();
+		int[][] seeds = { { 0 }, { 3, 9 }, { 5, 6, 7, 10 } };
+		double[] batch = run(graph, seeds, 3);
+
+		for (int b = 0; b < seeds.length; b++) {
+			double[] single = run(graph, new int[][] { seeds[b] }, 1);
+			double sum = 0.0;
+			for (int page = 0; page < n; page++) {
+				assertEquals(single[page], batch[page * seeds.length + b], 1e-12);
+				sum += batch[page * seeds.length + b];
+			}
+			assertEquals(1.0, sum, 1e-9);
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package com.iub.fall2016.ds.project1;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Writes graphs in the binary format and reads them back.
+ */
+public class BinaryGraphFormatTest extends TestCase {
+
+	private void assertRoundTrip(CsrGraph graph) throws IOException {
+		File file = File.createTempFile("pagerank", ".bin");
+		file.deleteOnExit();
+		BinaryGraphFormat.write(graph, file.getPath());
+
+		assertTrue(BinaryGraphFormat.isBinary(file.getPath()));
+		CsrGraph read = BinaryGraphFormat.read(file.getPath());
+		assertTrue(Arrays.equals(graph.getPageIds(), read.getPageIds()));
+		assertTrue(Arrays.equals(graph.getOffsets(), read.getOffsets()));
+		assertTrue(Arrays.equals(graph.getTargets(), read.getTargets()));
+	}
+
+	public void testDensePageIds() throws IOException {
+		assertRoundTrip(SequentialPageRankTest.readmeGraph());
+	}
+
+	public void testSparsePageIds() throws IOException {
+		CsrGraph graph = new CsrGraph.Builder()
+				.addPage(1000000, new int[] { 7, 300 }, 0, 2)
+				.addPage(300, new int[] { 1000000 }, 0, 1)
+				.addPage(7, new int[] { 300 }, 0, 1)
+				.build();
+		assertRoundTrip(graph);
+	}
+}
@@ -0,0 +1,40 @@
+package com.iub.fall2016.ds.project1;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the CSR graph builder.
+ */
+public class CsrGraphTest extends TestCase {
+
+	public void testDenseRemapping() {
+		CsrGraph graph = new CsrGraph.Builder()
+				.addPage(10, new int[] { 30, 20 }, 0, 2)
+				.addPage(20, new int[] { 10 }, 0, 1)
+				.addPage(30, new int[] { 10 }, 0, 1)
+				.build();
+
+		assertEquals(3, graph.getNumPages());
+		assertEquals(4, graph.getNumEdges());
+		assertEquals(10, graph.getPageIds()[0]);
+		assertEquals(30, graph.getPageIds()[1]);
+		assertEquals(20, graph.getPageIds()[2]);
+		assertEquals(2, graph.outDegree(0));
+		assertEquals(1, graph.getTargets()[0]);
+		assertEquals(2, graph.getTargets()[1]);
+	}
+
+	public void testPageOnlySeenAsTarget() {
+		CsrGraph graph = new CsrGraph.Builder()
+				.addPage(0, new int[] { 1 }, 0, 1)
+				.build();
+
+		assertEquals(2, graph.getNumPages());
+		assertEquals(1, graph.outDegree(0));
+		// dangling page 1 keeps no out-links
+		assertEquals(0, graph.outDegree(1));
+		assertEquals(1, graph.getNumEdges());
+		assertEquals(1, graph.danglingPages().length);
+		assertEquals(1, graph.danglingPages()[0]);
+	}
+}
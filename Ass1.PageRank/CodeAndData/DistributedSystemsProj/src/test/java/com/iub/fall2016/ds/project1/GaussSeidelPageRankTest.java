@@ -0,0 +1,34 @@
+package com.iub.fall2016.ds.project1;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that the in-place solver reaches the Jacobi ranks in fewer sweeps.
+ */
+public class GaussSeidelPageRankTest extends TestCase {
+
+	public void testMatchesJacobiInFewerSweeps() {
+		SequentialPageRank jacobi = SequentialPageRankTest.solver(1000, "--tolerance=1e-12");
+		jacobi.calculatePageRank();
+		SequentialPageRank gaussSeidel = SequentialPageRankTest.solver(1000, "--tolerance=1e-12",
+				"--solver=gauss-seidel", "--threads=1");
+		gaussSeidel.calculatePageRank();
+
+		assertTrue(gaussSeidel.getIterationsDone() < jacobi.getIterationsDone());
+		double[] expected = jacobi.getRankValues();
+		double[] actual = gaussSeidel.getRankValues();
+		for (int page = 0; page < expected.length; page++) {
+			assertEquals(expected[page], actual[page], 1e-9);
+		}
+	}
+
+	public void testThreadedSweepsConverge() {
+		CsrGraph graph = SequentialPageRankTest.readmeGraph();
+		SolverComparison comparison = new SolverComparison(graph, 1e-12, 0.85);
+		SolverComparison.Run jacobi = comparison.jacobi(1);
+		SolverComparison.Run gaussSeidel = comparison.gaussSeidel(3);
+
+		assertTrue(gaussSeidel.residual < 1e-12);
+		assertEquals(0.0, SolverComparison.distance(jacobi.ranks, gaussSeidel.ranks), 1e-9);
+	}
+}
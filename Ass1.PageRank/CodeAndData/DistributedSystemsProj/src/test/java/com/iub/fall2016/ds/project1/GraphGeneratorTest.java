@@ -0,0 +1,107 @@
+package com.iub.fall2016.ds.project1;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the links of every model, that the output only depends on the seed
+ * and that it loads as a page rank input.
+ */
+public class GraphGeneratorTest extends TestCase {
+
+	private static void assertValidLinks(GraphGenerator generator) {
+		for (int page = 0; page < generator.getNumPages(); page++) {
+			int[] links = generator.outLinks(page);
+			for (int i = 0; i < links.length; i++) {
+				assertTrue(links[i] >= 0 && links[i] < generator.getNumPages());
+				assertTrue(links[i] != page);
+				assertTrue(i == 0 || links[i] > links[i - 1]);
+			}
+		}
+	}
+
+	private static byte[] generate(GraphGenerator generator, int threads) throws IOException {
+		File file = File.createTempFile("pagerank", ".input");
+		file.deleteOnExit();
+		generator.write(file.getPath(), threads);
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			byte[] bytes = new byte[(int) in.length()];
+			in.readFully(bytes);
+			return bytes;
+		} finally {
+			in.close();
+		}
+	}
+
+	public void testErdosRenyi() {
+		GraphGenerator generator = GraphGenerator.erdosRenyi(5000, 8, 1);
+		assertValidLinks(generator);
+		long links = 0;
+		for (int page = 0; page < 5000; page++) {
+			links += generator.outLinks(page).length;
+		}
+		assertEquals(8.0, links / 5000.0, 0.2);
+	}
+
+	public void testRMat() {
+		GraphGenerator generator = GraphGenerator.rmat(12, 8, 0.57, 0.19, 0.19, 1);
+		assertEquals(4096, generator.getNumPages());
+		assertValidLinks(generator);
+		// page 0 is in the densest row of every level
+		assertTrue(generator.outLinks(0).length > generator.outLinks(4095).length);
+	}
+
+	public void testBarabasiAlbert() {
+		GraphGenerator generator = GraphGenerator.barabasiAlbert(5000, 4, 1);
+		assertValidLinks(generator);
+		int[] inDegree = new int[5000];
+		for (int page = 0; page < 5000; page++) {
+			int[] links = generator.outLinks(page);
+			assertTrue(links.length <= 4);
+			for (int target : links) {
+				assertTrue(target < page);
+				inDegree[target]++;
+			}
+		}
+		// early pages collect most links
+		int early = 0;
+		for (int page = 0; page < 50; page++) {
+			early += inDegree[page];
+		}
+		assertTrue(early > 50 * 4 * 4);
+	}
+
+	public void testOutputDependsOnSeedOnly() throws IOException {
+		GraphGenerator generator = GraphGenerator.barabasiAlbert(40000, 3, 42);
+		byte[] single = generate(generator, 1);
+		assertTrue(Arrays.equals(single, generate(generator, 3)));
+		assertFalse(Arrays.equals(single, generate(GraphGenerator.barabasiAlbert(40000, 3, 43), 3)));
+	}
+
+	public void testOutputLoads() throws IOException {
+		GraphGenerator generator = GraphGenerator.rmat(10, 4, 0.57, 0.19, 0.19, 5);
+		File file = File.createTempFile("pagerank", ".input");
+		file.deleteOnExit();
+		long written = generator.write(file.getPath(), 2);
+
+		CsrGraph graph = new MappedGraphLoader(2).load(file.getPath());
+		assertEquals(1024, graph.getNumPages());
+		assertEquals(written, graph.getNumEdges());
+		// the loader numbers pages in order of appearance
+		int[] pageIds = graph.getPageIds();
+		for (int dense = 0; dense < 1024; dense++) {
+			int[] links = Arrays.copyOfRange(graph.getTargets(), graph.getOffsets()[dense],
+					graph.getOffsets()[dense + 1]);
+			for (int i = 0; i < links.length; i++) {
+				links[i] = pageIds[links[i]];
+			}
+			Arrays.sort(links);
+			assertTrue(Arrays.equals(generator.outLinks(pageIds[dense]), links));
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package com.iub.fall2016.ds.project1;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares the incremental update with a full run on the changed graph.
+ */
+public class IncrementalPageRankTest extends TestCase {
+
+	private static double[] converged(CsrGraph graph) {
+		SequentialPageRank pr = new SequentialPageRank();
+		pr.parseArgs(new String[] { "in", "out", "10000", "0.85", "--solver=gauss-seidel", "--threads=1",
+				"--tolerance=1e-14" });
+		pr.setGraph(graph);
+		pr.calculatePageRank();
+		return pr.getRankValues();
+	}
+
+	public void testMatchesFullRecomputation() {
+		CsrGraph oldGraph = SequentialPageRankTest.readmeGraph();
+		IncrementalPageRank incremental = new IncrementalPageRank(oldGraph, converged(oldGraph), 0.85);
+		IncrementalPageRank.EdgeDelta delta = new IncrementalPageRank.EdgeDelta()
+				.add(true, 0, 4)     // dangling page gets a link
+				.add(false, 4, 3)
+				.add(true, 9, 1)
+				.add(true, 11, 2)    // new page
+				.add(true, 6, 12);   // new dangling page
+		CsrGraph graph = incremental.applyDelta(delta);
+		double[] ranks = incremental.update(1e-12);
+
+		assertEquals(13, graph.getNumPages());
+		double[] expected = converged(graph);
+		for (int page = 0; page < expected.length; page++) {
+			assertEquals(expected[page], ranks[page], 1e-10);
+		}
+	}
+
+	public void testRejectsMissingEdge() {
+		CsrGraph oldGraph = SequentialPageRankTest.readmeGraph();
+		IncrementalPageRank incremental = new IncrementalPageRank(oldGraph, converged(oldGraph), 0.85);
+		try {
+			incremental.applyDelta(new IncrementalPageRank.EdgeDelta().add(false, 1, 5));
+			fail();
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package com.iub.fall2016.ds.project1;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares the memory mapped loader with the graph built line by line.
+ */
+public class MappedGraphLoaderTest extends TestCase {
+
+	public void testSpansManyChunks() throws IOException {
+		Random random = new Random(7);
+		CsrGraph.Builder expected = new CsrGraph.Builder();
+		StringBuilder text = new StringBuilder();
+		int[] links = new int[20];
+		for (int page = 0; page < 3000; page++) {
+			int degree = 1 + random.nextInt(links.length - 1);
+			text.append(page);
+			for (int i = 0; i < degree; i++) {
+				links[i] = random.nextInt(3000);
+				text.append(' ').append(links[i]);
+			}
+			// mix unix and windows line endings, and no newline at the end
+			if (page % 2 == 0) {
+				text.append('\r');
+			}
+			if (page < 2999) {
+				text.append('\n');
+			}
+			expected.addPage(page, links, 0, degree);
+		}
+
+		File file = File.createTempFile("pagerank", ".input");
+		file.deleteOnExit();
+		FileWriter writer = new FileWriter(file);
+		writer.write(text.toString());
+		writer.close();
+
+		CsrGraph want = expected.build();
+		CsrGraph got = new MappedGraphLoader(4).load(file.getPath());
+
+		assertTrue(Arrays.equals(want.getPageIds(), got.getPageIds()));
+		assertTrue(Arrays.equals(want.getOffsets(), got.getOffsets()));
+		assertTrue(Arrays.equals(want.getTargets(), got.getTargets()));
+	}
+
+	public void testRejectsOverflow() throws IOException {
+		File file = File.createTempFile("pagerank", ".input");
+		file.deleteOnExit();
+		FileWriter writer = new FileWriter(file);
+		// 4294967297 would wrap around to page 1 in an int
+		writer.write("0 1\n1 4294967297\n");
+		writer.close();
+
+		try {
+			new MappedGraphLoader(1).load(file.getPath());
+			fail();
+		} catch (IOException expected) {
+		}
+	}
+}
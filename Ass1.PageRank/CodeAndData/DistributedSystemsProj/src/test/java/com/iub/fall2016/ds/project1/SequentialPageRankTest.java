@@ -0,0 +1,84 @@
+package com.iub.fall2016.ds.project1;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks the page rank solver on the example graph from the README.
+ */
+public class SequentialPageRankTest extends TestCase {
+
+	static CsrGraph readmeGraph() {
+		int[][] adj = { { 0 }, { 1, 2 }, { 2, 1 }, { 3, 0, 1 }, { 4, 1, 3, 5 }, { 5, 1, 4 }, { 6, 1, 4 },
+				{ 7, 1, 4 }, { 8, 1, 4 }, { 9, 4 }, { 10, 4 } };
+		CsrGraph.Builder builder = new CsrGraph.Builder();
+		for (int[] line : adj) {
+			builder.addPage(line[0], line, 1, line.length - 1);
+		}
+		return builder.build();
+	}
+
+	static SequentialPageRank solver(String... args) {
+		return solver(50, args);
+	}
+
+	static SequentialPageRank solver(int iterations, String... args) {
+		SequentialPageRank pr = new SequentialPageRank();
+		String[] all = new String[4 + args.length];
+		all[0] = "in";
+		all[1] = "out";
+		all[2] = Integer.toString(iterations);
+		all[3] = "0.85";
+		System.arraycopy(args, 0, all, 4, args.length);
+		pr.parseArgs(all);
+		pr.setGraph(readmeGraph());
+		return pr;
+	}
+
+	public void testRanksSumToOne() {
+		SequentialPageRank pr = solver();
+		pr.calculatePageRank();
+
+		double sum = 0;
+		for (double rank : pr.getRankValues()) {
+			sum += rank;
+		}
+		assertEquals(1.0, sum, 1e-9);
+	}
+
+	public void testTopPages() {
+		SequentialPageRank pr = solver();
+		pr.calculatePageRank();
+
+		double[] ranks = pr.getRankValues();
+		int[] pageIds = pr.getGraph().getPageIds();
+		int best = 0;
+		for (int page = 1; page < ranks.length; page++) {
+			if (ranks[page] > ranks[best]) {
+				best = page;
+			}
+		}
+		assertEquals(1, pageIds[best]);
+		assertEquals(0.3843, ranks[best], 1e-3);
+	}
+
+	public void testPullModeMatchesPush() {
+		SequentialPageRank push = solver();
+		push.calculatePageRank();
+		SequentialPageRank pull = solver("--mode=pull", "--threads=4");
+		pull.calculatePageRank();
+
+		double[] expected = push.getRankValues();
+		double[] actual = pull.getRankValues();
+		for (int page = 0; page < expected.length; page++) {
+			assertEquals(expected[page], actual[page], 1e-12);
+		}
+	}
+
+	public void testStopsOnceConverged() {
+		SequentialPageRank pr = solver(1000, "--tolerance=1e-10", "--norm=linf");
+		pr.calculatePageRank();
+
+		assertTrue(pr.getIterationsDone() < 1000);
+		assertEquals(0.3844, pr.getRankValues()[1], 1e-4);
+	}
+}
@@ -0,0 +1,53 @@
+package com.iub.fall2016.ds.project1;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares heap based top-k selection with a full sort.
+ */
+public class TopKTest extends TestCase {
+
+	public void testMatchesFullSort() {
+		Random random = new Random(3);
+		double[] ranks = new double[5000];
+		for (int i = 0; i < ranks.length; i++) {
+			ranks[i] = random.nextInt(1000) / 1000.0;
+		}
+		double[] sorted = ranks.clone();
+		Arrays.sort(sorted);
+
+		TopK top = TopK.select(ranks, 0, ranks.length, 10).sort();
+		assertEquals(10, top.size());
+		for (int i = 0; i < 10; i++) {
+			assertEquals(sorted[sorted.length - 1 - i], top.getValues()[i], 0.0);
+			assertEquals(ranks[top.getPages()[i]], top.getValues()[i], 0.0);
+		}
+		// equal ranks come out in page order
+		for (int i = 1; i < 10; i++) {
+			if (top.getValues()[i] == top.getValues()[i - 1]) {
+				assertTrue(top.getPages()[i] > top.getPages()[i - 1]);
+			}
+		}
+	}
+
+	public void testMergePartitions() {
+		double[] ranks = { 0.1, 0.5, 0.3, 0.9, 0.2, 0.8, 0.4 };
+		TopK merged = new TopK(3);
+		merged.merge(TopK.select(ranks, 0, 3, 3));
+		merged.merge(TopK.select(ranks, 3, 7, 3));
+		merged.sort();
+
+		assertEquals(3, merged.getPages()[0]);
+		assertEquals(5, merged.getPages()[1]);
+		assertEquals(1, merged.getPages()[2]);
+	}
+
+	public void testFewerPagesThanK() {
+		TopK top = TopK.select(new double[] { 0.2, 0.7 }, 0, 2, 10).sort();
+		assertEquals(2, top.size());
+		assertEquals(1, top.getPages()[0]);
+	}
+}
@@ -0,0 +1,21 @@
+#!/bin/sh
+# Strong scaling report for MPJPageRankMain: runs the same input with 2 to 64
+# processes and prints the "Scaling:" summary line of every run (total,
+# compute and communication time seen by process 0).
+#
+# usage: scaling.sh <input_file> [num_iters] [device]
+# The compiled classes are taken from $MPJ_CP (default: bin).
+
+if [ -z "$MPJ_HOME" ] || [ -z "$1" ]; then
+	echo "usage: MPJ_HOME=<mpj dir> scaling.sh <input_file> [num_iters] [device]"
+	exit 1
+fi
+INPUT=$1
+ITERS=${2:-20}
+DEV=${3:-multicore}
+CP=${MPJ_CP:-bin}
+
+for NP in 2 4 8 16 32 64; do
+	"$MPJ_HOME/bin/mpjrun.sh" -np $NP -dev $DEV -cp "$CP" com.rohit.MPJPageRank.MPJPageRankMain \
+		"$INPUT" /tmp/mpj_scaling_$NP.out $ITERS 0.85 2>&1 | grep "^Scaling:"
+done
@@ -0,0 +1,136 @@
+package com.rohit.MPJPageRank;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reader for the binary graph files written by
+ * com.iub.fall2016.ds.project1.BinaryGraphFormat (see that class for the
+ * layout). The page ids and the delta coded offsets are decoded on open; the
+ * out-links are memory mapped and only the slice a process asks for is read,
+ * so every process can open the shared file and load just its own pages.
+ */
+public class BinaryGraphReader {
+	public static final int MAGIC = 0x4B4E5250; // "PRNK" in little endian
+	public static final int VERSION = 1;
+	// flag bit: the page id section is present
+	public static final int PAGE_IDS = 1;
+
+	private static final int HEADER_BYTES = 40;
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private int numPages;
+	private long numEdges;
+	// URL number of every page, null if the URL number is the page index
+	private int[] pageIds;
+	// offsets[p] is the index of the first out-link of page p
+	private int[] offsets;
+	// file position of the out-links section
+	private long targetsStart;
+
+	public BinaryGraphReader(String fileName) throws IOException {
+		file = new RandomAccessFile(fileName, "r");
+		channel = file.getChannel();
+		ByteBuffer header = map(0, HEADER_BYTES);
+		if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+			file.close();
+			throw new IOException(fileName + " is not a version " + VERSION + " binary graph");
+		}
+		numPages = header.getInt(8);
+		int flags = header.getInt(12);
+		numEdges = header.getLong(16);
+		long pageIdBytes = header.getLong(24);
+		long degreeBytes = header.getLong(32);
+
+		long position = HEADER_BYTES;
+		if ((flags & PAGE_IDS) != 0) {
+			ByteBuffer bytes = map(position, pageIdBytes);
+			pageIds = new int[numPages];
+			int previous = 0;
+			for (int page = 0; page < numPages; page++) {
+				int zigzag = readVarint(bytes);
+				previous += (zigzag >>> 1) ^ -(zigzag & 1);
+				pageIds[page] = previous;
+			}
+		}
+		position += pageIdBytes;
+
+		offsets = new int[numPages + 1];
+		ByteBuffer bytes = map(position, degreeBytes);
+		for (int page = 0; page < numPages; page++) {
+			offsets[page + 1] = offsets[page] + readVarint(bytes);
+		}
+		position += degreeBytes;
+		targetsStart = (position + 3) & ~3L;
+	}
+
+	public static boolean isBinary(String fileName) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(fileName, "r");
+		try {
+			if (in.length() < HEADER_BYTES) {
+				return false;
+			}
+			ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			in.getChannel().read(magic, 0);
+			return magic.getInt(0) == MAGIC;
+		} finally {
+			in.close();
+		}
+	}
+
+	public int getNumPages() {
+		return numPages;
+	}
+
+	public long getNumEdges() {
+		return numEdges;
+	}
+
+	public int[] getOffsets() {
+		return offsets;
+	}
+
+	// URL number of a page
+	public int pageId(int page) {
+		return pageIds == null ? page : pageIds[page];
+	}
+
+	// out-links of pages firstPage .. lastPage - 1, back to back
+	public int[] readTargets(int firstPage, int lastPage) throws IOException {
+		int from = offsets[firstPage];
+		int[] targets = new int[offsets[lastPage] - from];
+		if (targets.length > 0) {
+			map(targetsStart + 4L * from, 4L * targets.length).asIntBuffer().get(targets);
+		}
+		return targets;
+	}
+
+	public void close() throws IOException {
+		file.close();
+	}
+
+	private MappedByteBuffer map(long position, long length) throws IOException {
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("Section of " + length + " bytes is too large to map");
+		}
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		return buffer;
+	}
+
+	private static int readVarint(ByteBuffer bytes) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = bytes.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return value;
+	}
+}
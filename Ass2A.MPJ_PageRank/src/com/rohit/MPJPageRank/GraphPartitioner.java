@@ -0,0 +1,151 @@
+package com.rohit.MPJPageRank;
+
+import java.util.Arrays;
+
+/**
+ * Assigns every page to a process. The result is a page -> process map,
+ * owner[page], computed by process 0 and broadcast to the others.
+ *
+ * pages: equal contiguous chunks of pages, process 0 takes the remainder
+ * (the original split).
+ * edges: contiguous chunks with about the same work, counted as one per
+ * page plus one per out-link, so a few pages with huge out-degree do not
+ * overload one process.
+ * ldg: Linear Deterministic Greedy streaming partitioning. Pages are
+ * placed in order on the process that already holds most of their
+ * neighbours (in- and out-links), weighted by how much room that process
+ * has left, with the same work measure and a capacity of SLACK times the
+ * average. This keeps the work balanced and cuts fewer links.
+ */
+public class GraphPartitioner {
+	// ldg capacity, relative to the average work per process
+	private static final double SLACK = 1.05;
+
+	public static int[] partition(String method, int[] offsets, int[] targets, int numPages, int parts) {
+		if (method.equals("pages")) {
+			return byPages(numPages, parts);
+		} else if (method.equals("edges")) {
+			return byEdges(offsets, numPages, parts);
+		} else if (method.equals("ldg")) {
+			return ldg(offsets, targets, numPages, parts);
+		}
+		throw new IllegalArgumentException("Unknown partitioning: " + method);
+	}
+
+	public static int[] byPages(int numPages, int parts) {
+		int[] owner = new int[numPages];
+		int chunk = numPages / parts;
+		int first = numPages - chunk * (parts - 1);
+		for (int page = 0; page < numPages; page++) {
+			owner[page] = page < first ? 0 : 1 + (page - first) / chunk;
+		}
+		return owner;
+	}
+
+	public static int[] byEdges(int[] offsets, int numPages, int parts) {
+		int[] owner = new int[numPages];
+		long total = (long) numPages + offsets[numPages];
+		int part = 0;
+		for (int page = 0; page < numPages; page++) {
+			// work done before this page
+			long before = (long) page + offsets[page];
+			while (part + 1 < parts && before >= total * (part + 1) / parts) {
+				part++;
+			}
+			owner[page] = part;
+		}
+		return owner;
+	}
+
+	public static int[] ldg(int[] offsets, int[] targets, int numPages, int parts) {
+		int[] owner = new int[numPages];
+		Arrays.fill(owner, -1);
+		int[] inOffsets = new int[numPages + 1];
+		int numLinks = offsets[numPages];
+		for (int e = 0; e < numLinks; e++) {
+			inOffsets[targets[e] + 1]++;
+		}
+		for (int page = 0; page < numPages; page++) {
+			inOffsets[page + 1] += inOffsets[page];
+		}
+		int[] sources = new int[numLinks];
+		int[] next = Arrays.copyOf(inOffsets, numPages);
+		for (int page = 0; page < numPages; page++) {
+			for (int e = offsets[page]; e < offsets[page + 1]; e++) {
+				sources[next[targets[e]]++] = page;
+			}
+		}
+
+		double capacity = SLACK * ((double) numPages + numLinks) / parts;
+		long[] load = new long[parts];
+		// placed neighbours of the current page on every process
+		int[] neighbours = new int[parts];
+		for (int page = 0; page < numPages; page++) {
+			Arrays.fill(neighbours, 0);
+			for (int e = offsets[page]; e < offsets[page + 1]; e++) {
+				if (owner[targets[e]] >= 0) {
+					neighbours[owner[targets[e]]]++;
+				}
+			}
+			for (int e = inOffsets[page]; e < inOffsets[page + 1]; e++) {
+				if (owner[sources[e]] >= 0) {
+					neighbours[owner[sources[e]]]++;
+				}
+			}
+			long work = 1 + offsets[page + 1] - offsets[page];
+			int best = -1;
+			double bestScore = 0.0;
+			for (int part = 0; part < parts; part++) {
+				if (load[part] + work > capacity && best >= 0) {
+					continue;
+				}
+				double score = neighbours[part] * (1.0 - load[part] / capacity);
+				if (best < 0 || score > bestScore || (score == bestScore && load[part] < load[best])) {
+					best = part;
+					bestScore = score;
+				}
+			}
+			owner[page] = best;
+			load[best] += work;
+		}
+		return owner;
+	}
+
+	/**
+	 * Pages, out-links and cut links (out-links to a page of another
+	 * process) of every process, one line per process plus the imbalance.
+	 * Cut links are left out when targets is null.
+	 */
+	public static String statistics(int[] owner, int[] offsets, int[] targets, int parts) {
+		long[] pages = new long[parts];
+		long[] links = new long[parts];
+		long[] cut = new long[parts];
+		for (int page = 0; page < owner.length; page++) {
+			int part = owner[page];
+			pages[part]++;
+			links[part] += offsets[page + 1] - offsets[page];
+			if (targets == null) {
+				continue;
+			}
+			for (int e = offsets[page]; e < offsets[page + 1]; e++) {
+				if (owner[targets[e]] != part) {
+					cut[part]++;
+				}
+			}
+		}
+		StringBuffer out = new StringBuffer();
+		long maxLinks = 0;
+		long totalLinks = 0;
+		long totalCut = 0;
+		for (int part = 0; part < parts; part++) {
+			out.append("Process " + part + ": pages = " + pages[part] + ", links = " + links[part]
+					+ (targets == null ? "" : ", cut links = " + cut[part]) + "\n");
+			maxLinks = Math.max(maxLinks, links[part]);
+			totalLinks += links[part];
+			totalCut += cut[part];
+		}
+		out.append("Link imbalance (max / average) = " + (totalLinks == 0 ? 1.0 : maxLinks * (double) parts
+				/ totalLinks) + (targets == null ? "" : ", cut links = " + totalCut + " of " + totalLinks));
+		return out.toString();
+	}
+}
@@ -0,0 +1,393 @@
+package com.rohit.MPJPageRank;
+
+import java.util.Arrays;
+
+import mpi.MPI;
+import mpi.Request;
+
+/**
+ * Push iteration that exchanges only ghost pages instead of the whole rank
+ * vector.
+ *
+ * Every process keeps the ranks of its own pages only. The out-links of the
+ * owned pages are relabelled once: a link to an owned page points at its
+ * local index, a link to a page of another process (a ghost page) points at
+ * a ghost slot. The ghost slots are grouped by owner, and every owner is
+ * told once which of its pages the slots stand for. An iteration then sums
+ * the contributions to each ghost page locally and sends one value per
+ * ghost page with Alltoallv, so the volume follows the edge cut instead of
+ * being N values per process.
+ *
+ * Delta mode (a threshold >= 0) sends even less. The receiver keeps the sum
+ * of everything it got for a ghost page, and the sender only sends (slot,
+ * change) pairs, packed into one double array, for the ghost sums that moved
+ * by more than the threshold since they were last sent. Once the ranks
+ * settle, few pairs are left to send.
+ *
+ * Convergence: a ghost sum used by its owner is never more than threshold
+ * away from the sum the sender has just computed. An iteration is therefore
+ * the exact page rank update plus an error of at most d * G * threshold in
+ * L1, where G is the number of ghost pages of all processes. The update is a
+ * contraction with factor d in L1, so after k iterations the distance to
+ * the exact ranks is at most d^k * (initial distance) + d * G * threshold /
+ * (1 - d). The same bound holds for the error in the total rank. With a
+ * threshold of 0, every changed sum is sent and the iteration is exact.
+ *
+ * Overlap mode sends the same values as the plain halo exchange, but with
+ * Isend/Irecv. The boundary pages (those with a link to a ghost page) are
+ * pushed first, their ghost sums are posted, and the interior pages are
+ * pushed while the messages are in flight. The time the messages were in
+ * flight while interior pages were being pushed is counted as hidden.
+ */
+public class HaloExchange {
+	private static final int TAG = 6;
+	// interior pages pushed between two checks for arrived messages
+	private static final int POLL_PAGES = 1024;
+
+	private final int numPages;
+	private final int[] offsets;
+	// out-links: >= 0 is the local index of an owned page, < 0 is ghost
+	// slot -1 - target
+	private final int[] localTargets;
+	// ghost slots sent to process q: sendDispls[q] .. sendDispls[q] +
+	// sendCounts[q] - 1, values received from q likewise
+	private final int[] sendCounts;
+	private final int[] sendDispls;
+	private final int[] recvCounts;
+	private final int[] recvDispls;
+	// local index of the owned page every received value is added to
+	private final int[] recvIndex;
+	// local indices of the boundary pages, order[0 .. boundaryCount - 1],
+	// followed by the interior pages
+	private final int[] order;
+	private final int boundaryCount;
+	private final double[] ghostSums;
+	private final double[] received;
+	// ghost pages of all processes
+	private final long totalGhosts;
+	// delta mode: send changes above this, -1 sends every ghost sum
+	private double threshold = -1;
+	// delta mode: ghost sums as last sent, and the received sums
+	private double[] sentSums;
+	private double[] remoteSums;
+	// delta mode: (slot, change) pairs per process, at twice the
+	// displacements of the ghost slots
+	private double[] pairs;
+	private double[] receivedPairs;
+	private int[] pairCounts;
+	private int[] pairDispls;
+	private int[] recvPairCounts;
+	private int[] recvPairDispls;
+	// values sent by all processes in the last iteration
+	private long lastSent;
+	// overlap mode: one request per process we send to or receive from
+	private Request[] requests = null;
+	private long computeTime = 0;
+	private long communicationTime = 0;
+	// overlap mode: communication time hidden behind the interior pages
+	private long hiddenTime = 0;
+
+	/**
+	 * @param ownedPages
+	 *            pages of this process, in increasing order
+	 * @param owner
+	 *            process of every page
+	 */
+	public HaloExchange(int[] ownedPages, int[] ownedOffsets, int[] ownedTargets, int[] owner, int rank, int size) {
+		this.numPages = owner.length;
+		this.offsets = ownedOffsets;
+		// ghost pages sorted by owner, then page: owner << 32 | page
+		long[] ghosts = new long[ownedTargets.length];
+		int numGhosts = 0;
+		for (int target : ownedTargets) {
+			if (owner[target] != rank) {
+				ghosts[numGhosts++] = (long) owner[target] << 32 | target;
+			}
+		}
+		Arrays.sort(ghosts, 0, numGhosts);
+		int distinct = 0;
+		for (int i = 0; i < numGhosts; i++) {
+			if (distinct == 0 || ghosts[i] != ghosts[distinct - 1]) {
+				ghosts[distinct++] = ghosts[i];
+			}
+		}
+		ghosts = Arrays.copyOf(ghosts, distinct);
+
+		localTargets = new int[ownedTargets.length];
+		for (int e = 0; e < ownedTargets.length; e++) {
+			int target = ownedTargets[e];
+			localTargets[e] = owner[target] == rank ? Arrays.binarySearch(ownedPages, target)
+					: -1 - Arrays.binarySearch(ghosts, (long) owner[target] << 32 | target);
+		}
+		order = new int[ownedPages.length];
+		boolean[] boundary = new boolean[ownedPages.length];
+		int next = 0;
+		for (int i = 0; i < ownedPages.length; i++) {
+			for (int e = offsets[i]; e < offsets[i + 1] && !boundary[i]; e++) {
+				boundary[i] = localTargets[e] < 0;
+			}
+			if (boundary[i]) {
+				order[next++] = i;
+			}
+		}
+		boundaryCount = next;
+		for (int i = 0; i < ownedPages.length; i++) {
+			if (!boundary[i]) {
+				order[next++] = i;
+			}
+		}
+
+		sendCounts = new int[size];
+		sendDispls = new int[size];
+		int[] ghostPages = new int[ghosts.length];
+		for (int i = 0; i < ghosts.length; i++) {
+			sendCounts[(int) (ghosts[i] >>> 32)]++;
+			ghostPages[i] = (int) ghosts[i];
+		}
+		for (int q = 1; q < size; q++) {
+			sendDispls[q] = sendDispls[q - 1] + sendCounts[q - 1];
+		}
+
+		// tell every owner which of its pages our slots stand for
+		recvCounts = new int[size];
+		recvDispls = new int[size];
+		MPI.COMM_WORLD.Alltoall(sendCounts, 0, 1, MPI.INT, recvCounts, 0, 1, MPI.INT);
+		for (int q = 1; q < size; q++) {
+			recvDispls[q] = recvDispls[q - 1] + recvCounts[q - 1];
+		}
+		recvIndex = new int[recvDispls[size - 1] + recvCounts[size - 1]];
+		MPI.COMM_WORLD.Alltoallv(ghostPages, 0, sendCounts, sendDispls, MPI.INT, recvIndex, 0, recvCounts, recvDispls,
+				MPI.INT);
+		for (int i = 0; i < recvIndex.length; i++) {
+			recvIndex[i] = Arrays.binarySearch(ownedPages, recvIndex[i]);
+		}
+
+		ghostSums = new double[ghosts.length];
+		received = new double[recvIndex.length];
+		double[] count = new double[] { ghosts.length };
+		double[] total = new double[1];
+		MPI.COMM_WORLD.Allreduce(count, 0, total, 0, 1, MPI.DOUBLE, MPI.SUM);
+		totalGhosts = (long) total[0];
+		lastSent = totalGhosts;
+	}
+
+	/**
+	 * Switch to delta mode: only ghost sums that changed by more than
+	 * threshold since they were last sent are sent.
+	 */
+	public void setDeltaThreshold(double threshold) {
+		int size = sendCounts.length;
+		this.threshold = threshold;
+		sentSums = new double[ghostSums.length];
+		remoteSums = new double[received.length];
+		pairs = new double[2 * ghostSums.length];
+		receivedPairs = new double[2 * received.length];
+		pairCounts = new int[size];
+		pairDispls = new int[size];
+		recvPairCounts = new int[size];
+		recvPairDispls = new int[size];
+		for (int q = 0; q < size; q++) {
+			pairDispls[q] = 2 * sendDispls[q];
+			recvPairDispls[q] = 2 * recvDispls[q];
+		}
+	}
+
+	/**
+	 * Switch to overlap mode: the ghost sums of the boundary pages are sent
+	 * with Isend/Irecv while the interior pages are pushed.
+	 */
+	public void setOverlap() {
+		int peers = 0;
+		for (int q = 0; q < sendCounts.length; q++) {
+			peers += (sendCounts[q] > 0 ? 1 : 0) + (recvCounts[q] > 0 ? 1 : 0);
+		}
+		requests = new Request[peers];
+	}
+
+	/**
+	 * One iteration over the owned pages: rank holds their ranks by local
+	 * index, the new ranks are written to nextRank.
+	 *
+	 * @return the residual of the owned pages, L1 or L-infinity
+	 */
+	public double iterate(double[] rank, double[] nextRank, double dampingFactor, boolean maxNorm) {
+		Arrays.fill(nextRank, 0.0);
+		Arrays.fill(ghostSums, 0.0);
+		double[] totalDangling = new double[1];
+		double[] remote;
+		if (requests != null) {
+			totalDangling[0] = pushOverlapped(rank, nextRank);
+			remote = received;
+		} else {
+			long start = System.nanoTime();
+			double[] dangling = new double[] { push(rank, nextRank, 0, order.length) };
+			long exchangeStart;
+			if (threshold < 0) {
+				exchangeStart = System.nanoTime();
+				MPI.COMM_WORLD.Allreduce(dangling, 0, totalDangling, 0, 1, MPI.DOUBLE, MPI.SUM);
+				MPI.COMM_WORLD.Alltoallv(ghostSums, 0, sendCounts, sendDispls, MPI.DOUBLE, received, 0, recvCounts,
+						recvDispls, MPI.DOUBLE);
+				remote = received;
+			} else {
+				int sent = packChanges();
+				exchangeStart = System.nanoTime();
+				// the dangling rank and the number of pairs sent, summed
+				double[] local = new double[] { dangling[0], sent };
+				double[] total = new double[2];
+				MPI.COMM_WORLD.Allreduce(local, 0, total, 0, 2, MPI.DOUBLE, MPI.SUM);
+				totalDangling[0] = total[0];
+				lastSent = (long) total[1];
+				MPI.COMM_WORLD.Alltoall(pairCounts, 0, 1, MPI.INT, recvPairCounts, 0, 1, MPI.INT);
+				MPI.COMM_WORLD.Alltoallv(pairs, 0, pairCounts, pairDispls, MPI.DOUBLE, receivedPairs, 0,
+						recvPairCounts, recvPairDispls, MPI.DOUBLE);
+				for (int q = 0; q < recvPairCounts.length; q++) {
+					for (int i = recvPairDispls[q]; i < recvPairDispls[q] + recvPairCounts[q]; i += 2) {
+						remoteSums[recvDispls[q] + (int) receivedPairs[i]] += receivedPairs[i + 1];
+					}
+				}
+				remote = remoteSums;
+			}
+			long exchangeEnd = System.nanoTime();
+			computeTime += exchangeStart - start;
+			communicationTime += exchangeEnd - exchangeStart;
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < remote.length; i++) {
+			nextRank[recvIndex[i]] += remote[i];
+		}
+		double constantFactor = (1 - dampingFactor) / numPages + dampingFactor * totalDangling[0] / numPages;
+		double residual = 0.0;
+		for (int i = 0; i < nextRank.length; i++) {
+			nextRank[i] = constantFactor + dampingFactor * nextRank[i];
+			double change = Math.abs(nextRank[i] - rank[i]);
+			residual = maxNorm ? Math.max(residual, change) : residual + change;
+		}
+		computeTime += System.nanoTime() - start;
+		return residual;
+	}
+
+	// push the rank of pages order[from .. to - 1] along their out-links,
+	// returns the rank of the dangling pages among them
+	private double push(double[] rank, double[] nextRank, int from, int to) {
+		double dangling = 0.0;
+		for (int k = from; k < to; k++) {
+			int i = order[k];
+			int degree = offsets[i + 1] - offsets[i];
+			if (degree == 0) {
+				dangling += rank[i];
+				continue;
+			}
+			double contribution = rank[i] / degree;
+			for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+				int target = localTargets[e];
+				if (target >= 0) {
+					nextRank[target] += contribution;
+				} else {
+					ghostSums[-1 - target] += contribution;
+				}
+			}
+		}
+		return dangling;
+	}
+
+	// push the boundary pages, post their ghost sums, push the interior
+	// pages while the messages are in flight and wait for them; returns the
+	// dangling rank of all processes
+	private double pushOverlapped(double[] rank, double[] nextRank) {
+		long start = System.nanoTime();
+		double[] dangling = new double[] { push(rank, nextRank, 0, boundaryCount) };
+		long postStart = System.nanoTime();
+		int posted = 0;
+		for (int q = 0; q < recvCounts.length; q++) {
+			if (recvCounts[q] > 0) {
+				requests[posted++] = MPI.COMM_WORLD.Irecv(received, recvDispls[q], recvCounts[q], MPI.DOUBLE, q, TAG);
+			}
+		}
+		for (int q = 0; q < sendCounts.length; q++) {
+			if (sendCounts[q] > 0) {
+				requests[posted++] = MPI.COMM_WORLD.Isend(ghostSums, sendDispls[q], sendCounts[q], MPI.DOUBLE, q, TAG);
+			}
+		}
+		long postEnd = System.nanoTime();
+
+		// check now and then whether everything arrived, to know how much of
+		// the interior work really hid the communication
+		long arrived = 0;
+		for (int from = boundaryCount; from < order.length; from += POLL_PAGES) {
+			dangling[0] += push(rank, nextRank, from, Math.min(order.length, from + POLL_PAGES));
+			if (arrived == 0 && posted > 0 && completed(posted)) {
+				arrived = System.nanoTime();
+			}
+		}
+		long interiorEnd = System.nanoTime();
+		if (arrived == 0 && posted > 0) {
+			Request.Waitall(requests);
+		}
+		long waitEnd = System.nanoTime();
+		double[] totalDangling = new double[1];
+		MPI.COMM_WORLD.Allreduce(dangling, 0, totalDangling, 0, 1, MPI.DOUBLE, MPI.SUM);
+		long end = System.nanoTime();
+
+		computeTime += (postStart - start) + (interiorEnd - postEnd);
+		communicationTime += (postEnd - postStart) + (end - interiorEnd);
+		if (posted > 0) {
+			hiddenTime += (arrived != 0 ? arrived : interiorEnd) - postEnd;
+		}
+		return totalDangling[0];
+	}
+
+	// (slot, change) pairs for the ghost sums that moved by more than the
+	// threshold, the slot counted from the first slot of the owner
+	private int packChanges() {
+		int sent = 0;
+		for (int q = 0; q < sendCounts.length; q++) {
+			int pair = pairDispls[q];
+			for (int slot = sendDispls[q]; slot < sendDispls[q] + sendCounts[q]; slot++) {
+				double change = ghostSums[slot] - sentSums[slot];
+				if (Math.abs(change) > threshold) {
+					pairs[pair++] = slot - sendDispls[q];
+					pairs[pair++] = change;
+					sentSums[slot] = ghostSums[slot];
+				}
+			}
+			pairCounts[q] = pair - pairDispls[q];
+			sent += pairCounts[q] / 2;
+		}
+		return sent;
+	}
+
+	// ghost pages of all processes, the values sent per iteration without
+	// delta mode
+	public long getTotalGhosts() {
+		return totalGhosts;
+	}
+
+	// values sent by all processes in the last iteration, pairs in delta mode
+	public long getLastSent() {
+		return lastSent;
+	}
+
+	public long getComputeTime() {
+		return computeTime;
+	}
+
+	// whether the first count requests are complete
+	private boolean completed(int count) {
+		for (int i = 0; i < count; i++) {
+			if (requests[i].Test() == null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// communication time that was not hidden
+	public long getCommunicationTime() {
+		return communicationTime;
+	}
+
+	public long getHiddenTime() {
+		return hiddenTime;
+	}
+}
@@ -6,11 +6,23 @@ import java.util.*;
 import mpi.MPI;
 
 public class MPJPageRankMain {
-
-	// adjacency list read from input file as a string per page
-	private ArrayList<String> adjListOfStrings = new ArrayList<String>();
-	// adjacency matrix read from file
-	private HashMap<Integer, ArrayList<Integer>> adjList = new HashMap<Integer, ArrayList<Integer>>();
+	private static final String[] EXCHANGES = { "allreduce", "halo", "delta", "overlap" };
+	private static final String[] PARTITIONINGS = { "pages", "edges", "ldg" };
+	private static final String[] PRECISIONS = { "double", "float", "mixed" };
+	// mixed precision: the float iterations stop once the residual is within
+	// this many float roundings of the total rank (of the average rank for
+	// linf), below that it is mostly rounding noise
+	private static final int FLOAT_ULPS = 64;
+
+	// text input parsed by process 0 in CSR form: the out-links of page p
+	// are targets[offsets[p] .. offsets[p + 1] - 1]
+	private int[] offsets;
+	private int[] targets;
+	// the pages this process owns in increasing order, the out-links of
+	// ownedPages[i] are ownedTargets[ownedOffsets[i] .. ownedOffsets[i + 1] - 1]
+	private int[] ownedPages;
+	private int[] ownedOffsets;
+	private int[] ownedTargets;
 	// input file name
 	private String inputFile = "";
 	// output file name
@@ -19,63 +31,152 @@ public class MPJPageRankMain {
 	private int iterations = 10;
 	// damping factor
 	private double dampingFactor = 0.85;
+	// stop once the residual drops below this value, 0 runs all iterations
+	private double tolerance = 0.0;
+	// residual norm: false for L1 (sum of changes), true for L-infinity
+	private boolean maxNorm = false;
+	// number of top ranked pages to print
+	private int topCount = 10;
+	// also write the rank of every page to the output file
+	private boolean outputAll = false;
+	// how pages are assigned to processes, see GraphPartitioner
+	private String partitioning = "edges";
+	// how ranks are exchanged: allreduce of the rank vector, or one of the
+	// HaloExchange modes: halo, delta or overlap
+	private String exchange = "allreduce";
+	// smallest change sent in delta mode, < 0 derives it from the tolerance
+	private double threshold = -1;
+	// directory for the checkpoints of every process, null for none
+	private String checkpointDirectory = null;
+	// iterations between two checkpoints
+	private int checkpointEvery = 10;
+	// resume from the newest checkpoint in checkpointDirectory
+	private boolean restart = false;
+	// rank precision with the allreduce exchange: double, float, or mixed
+	// (float iterations refined by double iterations at the end)
+	private String precision = "double";
 
 	// number of URLs
 	private int size = 0;
-	// rank array
+	// rank array, in halo mode only the owned pages by local index
 	private double rankArray[];
-
+	// rank array while the ranks are floats, rankArray is null meanwhile
+	private float floatRanks[];
+	// input converted with BinaryGraphFormat, opened by every process
+	private BinaryGraphReader binaryGraph = null;
+
+	// <input_file_name> <output_file_name> <num_iters> <damp_factor>
+	// [--tolerance=<eps>] [--norm=l1|linf] [--top=<k>] [--output=top|all]
+	// [--partition=pages|edges|ldg] [--exchange=allreduce|halo|delta|overlap]
+	// [--threshold=<eps>] [--checkpoint=<dir>] [--checkpoint-every=<n>]
+	// [--restart] [--precision=double|float|mixed]
 	public void parseArgs(String[] args) {
 		inputFile = args[0];
 		outputFile = args[1];
 		iterations = Integer.parseInt(args[2]);
 		dampingFactor = Double.parseDouble(args[3]);
+		for (int i = 4; i < args.length; i++) {
+			if (args[i].startsWith("--tolerance=")) {
+				tolerance = Double.parseDouble(args[i].substring("--tolerance=".length()));
+			} else if (args[i].equals("--norm=linf")) {
+				maxNorm = true;
+			} else if (args[i].equals("--norm=l1")) {
+				maxNorm = false;
+			} else if (args[i].startsWith("--top=")) {
+				topCount = Integer.parseInt(args[i].substring("--top=".length()));
+				if (topCount < 0) {
+					throw new IllegalArgumentException("--top must not be negative: " + topCount);
+				}
+			} else if (args[i].equals("--output=all")) {
+				outputAll = true;
+			} else if (args[i].equals("--output=top")) {
+				outputAll = false;
+			} else if (args[i].startsWith("--partition=")) {
+				partitioning = args[i].substring("--partition=".length());
+				if (Arrays.asList(PARTITIONINGS).indexOf(partitioning) < 0) {
+					throw new IllegalArgumentException("Unknown partitioning: " + partitioning);
+				}
+			} else if (args[i].startsWith("--exchange=")) {
+				exchange = args[i].substring("--exchange=".length());
+				if (Arrays.asList(EXCHANGES).indexOf(exchange) < 0) {
+					throw new IllegalArgumentException("Unknown exchange: " + exchange);
+				}
+			} else if (args[i].startsWith("--threshold=")) {
+				threshold = Double.parseDouble(args[i].substring("--threshold=".length()));
+			} else if (args[i].startsWith("--checkpoint=")) {
+				checkpointDirectory = args[i].substring("--checkpoint=".length());
+			} else if (args[i].startsWith("--checkpoint-every=")) {
+				checkpointEvery = Integer.parseInt(args[i].substring("--checkpoint-every=".length()));
+				if (checkpointEvery < 1) {
+					throw new IllegalArgumentException("--checkpoint-every must be at least 1: " + checkpointEvery);
+				}
+			} else if (args[i].equals("--restart")) {
+				restart = true;
+			} else if (args[i].startsWith("--precision=")) {
+				precision = args[i].substring("--precision=".length());
+				if (Arrays.asList(PRECISIONS).indexOf(precision) < 0) {
+					throw new IllegalArgumentException("Unknown precision: " + precision);
+				}
+			} else {
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+		}
+		if (!precision.equals("double") && !exchange.equals("allreduce")) {
+			throw new IllegalArgumentException("--precision=" + precision + " needs --exchange=allreduce");
+		}
 	}
 
-	// Read the input from the file and populate the adjacency matrix
+	// Read the input from the file into CSR arrays. Line p of a text input
+	// holds page p and its out-links. A binary graph is only opened here,
+	// every process reads its own pages.
 	public int loadInput(int rank) throws IOException {
+		if (BinaryGraphReader.isBinary(inputFile)) {
+			binaryGraph = new BinaryGraphReader(inputFile);
+			this.size = binaryGraph.getNumPages();
+			return this.size;
+		}
+		int[] lineOffsets = new int[1025];
+		int[] lineTargets = new int[4096];
+		int numLinks = 0;
+		BufferedReader in = new BufferedReader(new FileReader(inputFile));
 		try {
-			Scanner in = new Scanner(new FileReader(inputFile));
-
-			while (in.hasNextLine()) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				String temp[] = line.trim().split("\\s+");
+				if (temp[0].isEmpty()) {
+					continue;
+				}
+				if (Integer.parseInt(temp[0]) != this.size) {
+					throw new IOException("Line " + (this.size + 1) + " of " + inputFile + " should describe page "
+							+ this.size + ", found " + temp[0]);
+				}
+				if (this.size + 2 > lineOffsets.length) {
+					lineOffsets = Arrays.copyOf(lineOffsets, lineOffsets.length * 2);
+				}
+				if (numLinks + temp.length > lineTargets.length) {
+					lineTargets = Arrays.copyOf(lineTargets, Math.max(lineTargets.length * 2, numLinks + temp.length));
+				}
+				for (int j = 1; j < temp.length; j++) {
+					lineTargets[numLinks++] = Integer.parseInt(temp[j]);
+				}
 				this.size++;
-				adjListOfStrings.add(in.nextLine());
+				lineOffsets[this.size] = numLinks;
 			}
+		} finally {
 			in.close();
-
-		} catch (IOException e) {
-			System.out.println("Exception " + e + "\n\nStack Trace:");
-			e.printStackTrace();
 		}
+		offsets = Arrays.copyOf(lineOffsets, this.size + 1);
+		targets = lineTargets;
 		return this.size;
 	}
 
-	// Print top 10 pagerank values in descending order.
-	public void printValues() throws IOException {
-		// To maintain page numbers
-		int ind[] = new int[size];
-		for (int i = 0; i < size; i++) {
-			ind[i] = i;
-		}
-
-		// Sort the ranks, keeping track of their page numbers
-		for (int i = 0; i < size; i++) {
-			for (int j = 1; j < size; j++) {
-				if (rankArray[j - 1] < rankArray[j]) {
-					double t = rankArray[j - 1];
-					rankArray[j - 1] = rankArray[j];
-					rankArray[j] = t;
-					int t2 = ind[j - 1];
-					ind[j - 1] = ind[j];
-					ind[j] = t2;
-				}
-			}
-		}
-
+	// Print the top pagerank values in descending order. pages and values
+	// hold the merged top entries, best first; -1 pads a short list.
+	public void printValues(int[] pages, double[] values) throws IOException {
 		StringBuffer outString = new StringBuffer();
 		outString.append("Number of Iterations = " + iterations + "\n");
-		for (int i = 0; i < size && i < 10; i++) {
-			outString.append("Page: " + ind[i] + ": " + rankArray[i] + "\n");
+		for (int i = 0; i < pages.length && pages[i] >= 0; i++) {
+			outString.append("Page: " + pageId(pages[i]) + ": " + values[i] + "\n");
 		}
 		// Print to console
 		System.out.println(outString);
@@ -85,11 +186,23 @@ public class MPJPageRankMain {
 		if (!fileHandle.exists()) {
 			fileHandle.createNewFile();
 		}
-		BufferedWriter bw = new BufferedWriter(new FileWriter(fileHandle.getAbsoluteFile()));
+		BufferedWriter bw = new BufferedWriter(new FileWriter(fileHandle.getAbsoluteFile()), 1 << 16);
 		bw.write(outString.toString());
+		if (outputAll) {
+			// stream every rank instead of building one large string
+			bw.write("\nAll Page Ranks:\n");
+			for (int page = 0; page < size; page++) {
+				bw.write(pageId(page) + " " + rankArray[page] + "\n");
+			}
+		}
 		bw.close();
 	}
 
+	// URL number of a page
+	private int pageId(int page) {
+		return binaryGraph == null ? page : binaryGraph.pageId(page);
+	}
+
 	public static void main(String[] args) throws IOException {
 		// Read command line args along with MPI initiation
 		String inputArgs[] = MPI.Init(args);
@@ -103,197 +216,510 @@ public class MPJPageRankMain {
 			numPages = mpjPR.loadInput(rank);
 		}
 
-		// send damping factor
-		double d[] = new double[1];
+		// send damping factor, tolerance and delta threshold
+		double d[] = new double[3];
 		if (rank == 0) {
 			d[0] = mpjPR.dampingFactor;
+			d[1] = mpjPR.tolerance;
+			d[2] = mpjPR.threshold;
 			for (int i = 1; i < size; i++) {
-				MPI.COMM_WORLD.Send(d, 0, 1, MPI.DOUBLE, i, 1);
+				MPI.COMM_WORLD.Send(d, 0, 3, MPI.DOUBLE, i, 1);
 			}
 		} else {
-			MPI.COMM_WORLD.Recv(d, 0, 1, MPI.DOUBLE, 0, 1);
+			MPI.COMM_WORLD.Recv(d, 0, 3, MPI.DOUBLE, 0, 1);
 			mpjPR.dampingFactor = d[0];
+			mpjPR.tolerance = d[1];
+			mpjPR.threshold = d[2];
 		}
 
-		// send number of iterations
-		int its[] = new int[1];
+		// send number of iterations, residual norm, input format, top count,
+		// exchange, output mode, checkpoint settings and precision
+		int its[] = new int[10];
 		if (rank == 0) {
 			its[0] = mpjPR.iterations;
+			its[1] = mpjPR.maxNorm ? 1 : 0;
+			its[2] = mpjPR.binaryGraph != null ? 1 : 0;
+			its[3] = mpjPR.topCount;
+			its[4] = Arrays.asList(EXCHANGES).indexOf(mpjPR.exchange);
+			its[5] = mpjPR.outputAll ? 1 : 0;
+			its[6] = mpjPR.checkpointDirectory != null ? mpjPR.checkpointDirectory.getBytes("UTF-8").length : 0;
+			its[7] = mpjPR.checkpointEvery;
+			its[8] = mpjPR.restart ? 1 : 0;
+			its[9] = Arrays.asList(PRECISIONS).indexOf(mpjPR.precision);
 			for (int i = 1; i < size; i++) {
-				MPI.COMM_WORLD.Send(its, 0, 1, MPI.INT, i, 1);
+				MPI.COMM_WORLD.Send(its, 0, 10, MPI.INT, i, 1);
 			}
 		} else {
-			MPI.COMM_WORLD.Recv(its, 0, 1, MPI.INT, 0, 1);
+			MPI.COMM_WORLD.Recv(its, 0, 10, MPI.INT, 0, 1);
 			mpjPR.iterations = its[0];
+			mpjPR.maxNorm = its[1] == 1;
+			mpjPR.topCount = its[3];
+			mpjPR.exchange = EXCHANGES[its[4]];
+			mpjPR.outputAll = its[5] == 1;
+			mpjPR.checkpointEvery = its[7];
+			mpjPR.restart = its[8] == 1;
+			mpjPR.precision = PRECISIONS[its[9]];
+			if (its[2] == 1) {
+				mpjPR.inputFile = inputArgs[0];
+				mpjPR.binaryGraph = new BinaryGraphReader(mpjPR.inputFile);
+			}
 		}
 
-		int numOfPages[] = new int[1];
-		int localChunkSize = 0;
-		int localNumPages = 0;
-		int remoteChunkSize = 0;
+		// broadcast the checkpoint directory, its[6] is its length in bytes
+		if (its[6] > 0) {
+			byte[] directory = new byte[its[6]];
+			if (rank == 0) {
+				directory = mpjPR.checkpointDirectory.getBytes("UTF-8");
+			}
+			MPI.COMM_WORLD.Bcast(directory, 0, its[6], MPI.BYTE, 0);
+			mpjPR.checkpointDirectory = new String(directory, "UTF-8");
+		}
 
+		int numOfPages[] = new int[1];
 		if (rank == 0) {
-			// first send each process the size that it should expect
 			numOfPages[0] = mpjPR.size;
-			for (int i = 1; i < size; i++) {
-				MPI.COMM_WORLD.Send(numOfPages, 0, 1, MPI.INT, i, 1);
-			}
-			localNumPages = mpjPR.size;
-			remoteChunkSize = mpjPR.size / size;
-
-			// process 0 takes up extra pages if unevenly divided
-			localChunkSize = mpjPR.size - remoteChunkSize * (size - 1);
-		} else {
-			// receive the size of the array to expect
-			MPI.COMM_WORLD.Recv(numOfPages, 0, 1, MPI.INT, 0, 1);
-			localNumPages = numOfPages[0];
-			localChunkSize = localNumPages / size;
 		}
+		MPI.COMM_WORLD.Bcast(numOfPages, 0, 1, MPI.INT, 0);
+		int localNumPages = numOfPages[0];
 
+		// process 0 assigns every page to a process and broadcasts the map
+		long distributionStart = System.nanoTime();
+		int[] owner = new int[localNumPages];
 		if (rank == 0) {
-			// send adj list
+			if (mpjPR.binaryGraph != null) {
+				// the offsets give the link counts, only ldg needs the targets
+				mpjPR.offsets = mpjPR.binaryGraph.getOffsets();
+				if (mpjPR.partitioning.equals("ldg")) {
+					mpjPR.targets = mpjPR.binaryGraph.readTargets(0, localNumPages);
+				}
+			}
+			owner = GraphPartitioner.partition(mpjPR.partitioning, mpjPR.offsets, mpjPR.targets, localNumPages, size);
+			System.out.println("Partitioning (" + mpjPR.partitioning + "):\n"
+					+ GraphPartitioner.statistics(owner, mpjPR.offsets, mpjPR.targets, size));
+		}
+		MPI.COMM_WORLD.Bcast(owner, 0, localNumPages, MPI.INT, 0);
+		mpjPR.ownedPages = pagesOf(owner, rank);
+
+		if (mpjPR.binaryGraph != null) {
+			// every process maps its own pages of the shared binary file
+			mpjPR.offsets = null;
+			mpjPR.targets = null;
+			readOwnedPages(mpjPR);
+		} else if (rank == 0) {
+			// send every process its CSR partition in three messages: the
+			// number of out-links, the offsets and the out-links
+			int[] header = new int[1];
 			for (int processNumber = 1; processNumber < size; processNumber++) {
-				int pagesFrom = processNumber * remoteChunkSize;
-				if (localChunkSize - remoteChunkSize > 0) {
-					pagesFrom += localChunkSize - remoteChunkSize;
+				int[] pages = pagesOf(owner, processNumber);
+				int[] partOffsets = new int[pages.length + 1];
+				for (int i = 0; i < pages.length; i++) {
+					partOffsets[i + 1] = partOffsets[i] + mpjPR.offsets[pages[i] + 1] - mpjPR.offsets[pages[i]];
 				}
-				int pagesTo = pagesFrom + remoteChunkSize;
-				for (int page = pagesFrom; page < pagesTo; page++) {
-					int l = mpjPR.adjListOfStrings.get(page).length();
-					MPI.COMM_WORLD.Send(mpjPR.adjListOfStrings.get(page).toCharArray(), 0, l, MPI.CHAR, processNumber,
-							1);
+				int[] partTargets = new int[partOffsets[pages.length]];
+				for (int i = 0; i < pages.length; i++) {
+					System.arraycopy(mpjPR.targets, mpjPR.offsets[pages[i]], partTargets, partOffsets[i],
+							partOffsets[i + 1] - partOffsets[i]);
 				}
+				header[0] = partTargets.length;
+				MPI.COMM_WORLD.Send(header, 0, 1, MPI.INT, processNumber, 2);
+				MPI.COMM_WORLD.Send(partOffsets, 0, partOffsets.length, MPI.INT, processNumber, 3);
+				MPI.COMM_WORLD.Send(partTargets, 0, partTargets.length, MPI.INT, processNumber, 4);
 			}
-			
-			/*
-			 * done distributing the adjacency list, remove all but
-			 * <localchunksize> elements for rank 0
-			 */
-			ArrayList<String> tempAdjStrings = new ArrayList<String>();
-			for (int i = 0; i < localChunkSize; i++) {
-				tempAdjStrings.add(mpjPR.adjListOfStrings.get(i));
-			}
-			mpjPR.adjListOfStrings = tempAdjStrings;
 
-		} else {
-			for (int page = 0; page < localChunkSize; page++) {
-				char[] pageOutLinks = new char[localNumPages];
-				MPI.COMM_WORLD.Recv(pageOutLinks, 0, localNumPages, MPI.CHAR, 0, 1);
-				StringBuffer sb = new StringBuffer();
-				for (int i = 0; i < pageOutLinks.length; i++) {
-					sb.append(pageOutLinks[i]);
-				}
-				mpjPR.adjListOfStrings.add(sb.toString());
+			// keep only the pages of process 0
+			int[] pages = mpjPR.ownedPages;
+			mpjPR.ownedOffsets = new int[pages.length + 1];
+			for (int i = 0; i < pages.length; i++) {
+				mpjPR.ownedOffsets[i + 1] = mpjPR.ownedOffsets[i] + mpjPR.offsets[pages[i] + 1]
+						- mpjPR.offsets[pages[i]];
+			}
+			mpjPR.ownedTargets = new int[mpjPR.ownedOffsets[pages.length]];
+			for (int i = 0; i < pages.length; i++) {
+				System.arraycopy(mpjPR.targets, mpjPR.offsets[pages[i]], mpjPR.ownedTargets, mpjPR.ownedOffsets[i],
+						mpjPR.ownedOffsets[i + 1] - mpjPR.ownedOffsets[i]);
 			}
+			mpjPR.offsets = null;
+			mpjPR.targets = null;
+		} else {
+			int[] header = new int[1];
+			MPI.COMM_WORLD.Recv(header, 0, 1, MPI.INT, 0, 2);
+			mpjPR.ownedOffsets = new int[mpjPR.ownedPages.length + 1];
+			mpjPR.ownedTargets = new int[header[0]];
+			MPI.COMM_WORLD.Recv(mpjPR.ownedOffsets, 0, mpjPR.ownedOffsets.length, MPI.INT, 0, 3);
+			MPI.COMM_WORLD.Recv(mpjPR.ownedTargets, 0, header[0], MPI.INT, 0, 4);
 		}
-
-		// prepare the all pages string
-		StringBuffer sb = new StringBuffer();
-		for (int i = 0; i < mpjPR.size; i++) {
-			sb.append(" " + i);
+		if (rank == 0) {
+			System.out.println("Distributed " + localNumPages + " pages in " + (System.nanoTime() - distributionStart)
+					/ 1e6 + " ms");
 		}
 
-		// append to dangling pages
-		for (int i = 0; i < mpjPR.adjListOfStrings.size(); i++) {
-			if (mpjPR.adjListOfStrings.get(i).length() < 2) {
-				mpjPR.adjListOfStrings.set(i, mpjPR.adjListOfStrings.get(i) + sb);
+		mpjPR.size = localNumPages;
+		HaloExchange halo = null;
+		double[] localRanks = null;
+		double[] nextRanks = null;
+		// the same arrays while the ranks are floats
+		float[] localFloats = null;
+		float[] nextFloats = null;
+		if (!mpjPR.exchange.equals("allreduce")) {
+			// every process keeps the ranks of its own pages only
+			halo = new HaloExchange(mpjPR.ownedPages, mpjPR.ownedOffsets, mpjPR.ownedTargets, owner, rank, size);
+			mpjPR.ownedTargets = null;
+			long ghosts = halo.getTotalGhosts();
+			if (rank == 0) {
+				System.out.println("Halo exchange: " + ghosts + " values per iteration instead of "
+						+ (long) localNumPages * size);
 			}
-		}
-
-		// convert adjListOfStrings to adjList
-		for (int i = 0; i < mpjPR.adjListOfStrings.size(); i++) {
-			String temp[] = mpjPR.adjListOfStrings.get(i).split(" ");
-			ArrayList<Integer> outLinks = new ArrayList<Integer>();
-			for (int j = 1; j < temp.length; j++) {
-				outLinks.add(Integer.parseInt(temp[j].trim()));
+			if (mpjPR.exchange.equals("overlap")) {
+				halo.setOverlap();
+			} else if (mpjPR.exchange.equals("delta")) {
+				// without a threshold, keep the error bound of the delta
+				// exchange at the tolerance
+				double threshold = mpjPR.threshold >= 0 ? mpjPR.threshold : ghosts == 0 ? 0.0 : mpjPR.tolerance
+						* (1 - mpjPR.dampingFactor) / (mpjPR.dampingFactor * ghosts);
+				halo.setDeltaThreshold(threshold);
+				if (rank == 0) {
+					System.out.println("Delta exchange: threshold = " + threshold + ", error bound (L1) = "
+							+ mpjPR.dampingFactor * ghosts * threshold / (1 - mpjPR.dampingFactor));
+				}
 			}
-			mpjPR.adjList.put(Integer.parseInt(temp[0].trim()), outLinks);
+			mpjPR.rankArray = new double[mpjPR.ownedPages.length];
+			nextRanks = new double[mpjPR.ownedPages.length];
+			Arrays.fill(mpjPR.rankArray, 1.0 / localNumPages);
+		} else if (!mpjPR.precision.equals("double")) {
+			// the same arrays as below in float, half the memory and half
+			// the allreduce volume
+			mpjPR.floatRanks = new float[localNumPages];
+			localFloats = new float[localNumPages];
+			nextFloats = new float[localNumPages];
+			Arrays.fill(mpjPR.floatRanks, 1.0f / localNumPages);
+		} else {
+			// every process keeps the whole rank array
+			mpjPR.rankArray = new double[localNumPages];
+			// contribution of the owned pages to every page, and the summed
+			// ranks
+			localRanks = new double[localNumPages];
+			nextRanks = new double[localNumPages];
+			Arrays.fill(mpjPR.rankArray, 1.0 / localNumPages);
 		}
-
-		boolean firstRun = true;
-
-		int iterations = mpjPR.iterations;
-		while (iterations-- > 0) {
-			if (rank == 0) {
-				// *********** generate rank array **********
-				if (firstRun) {
-					firstRun = false;
-					mpjPR.rankArray = new double[mpjPR.size];
-					double avg = 1.0 / mpjPR.size;
-					for (int i = 0; i < mpjPR.size; i++) {
-						mpjPR.rankArray[i] = avg;
+		if (rank == 0 && halo == null) {
+			int bytes = mpjPR.floatRanks != null ? 4 : 8;
+			System.out.println("Precision: " + mpjPR.precision + ", rank arrays = " + 3L * bytes * localNumPages / 1e6
+					+ " MB per process, allreduce = " + (long) bytes * localNumPages / 1e6 + " MB per iteration");
+		}
+		double[] localResidual = new double[1];
+		double[] residual = new double[1];
+		int iterationsDone = 0;
+
+		RankCheckpointer checkpointer = null;
+		if (mpjPR.checkpointDirectory != null) {
+			checkpointer = new RankCheckpointer(mpjPR.checkpointDirectory, rank, size, mpjPR.ownedPages);
+			if (mpjPR.restart) {
+				// a process with the whole rank array restores its own pages,
+				// the others come from their owners
+				double[] restored = halo == null ? new double[localNumPages] : mpjPR.rankArray;
+				iterationsDone = checkpointer.restore(restored, halo == null, mpjPR.iterations);
+				if (iterationsDone > 0 && mpjPR.floatRanks != null) {
+					double[] ranks = new double[localNumPages];
+					MPI.COMM_WORLD.Allreduce(restored, 0, ranks, 0, localNumPages, MPI.DOUBLE, MPI.SUM);
+					for (int i = 0; i < localNumPages; i++) {
+						mpjPR.floatRanks[i] = (float) ranks[i];
 					}
+				} else if (iterationsDone > 0 && halo == null) {
+					MPI.COMM_WORLD.Allreduce(restored, 0, mpjPR.rankArray, 0, localNumPages, MPI.DOUBLE, MPI.SUM);
 				}
-				// send rank array to all processes
-				for (int processNumber = 1; processNumber < size; processNumber++) {
-					MPI.COMM_WORLD.Send(mpjPR.rankArray, 0, mpjPR.size, MPI.DOUBLE, processNumber, 1);
+				if (rank == 0) {
+					System.out.println(iterationsDone > 0 ? "Restarted from iteration " + iterationsDone
+							: "No checkpoint to restart from");
 				}
-
 			} else {
+				checkpointer.clear();
+			}
+		}
+		long computeTime = 0;
+		long communicationTime = 0;
+		long runStart = System.nanoTime();
+		// mixed precision: the float iterations are done, refine in double
+		boolean refine = false;
+		double previousResidual = Double.MAX_VALUE;
+
+		while (iterationsDone < mpjPR.iterations) {
+			if (mpjPR.floatRanks != null && mpjPR.precision.equals("mixed")
+					&& (refine || iterationsDone + 1 == mpjPR.iterations)) {
+				// float rounding does not keep the total rank at 1, and an error
+				// in the total only shrinks by the damping factor per iteration
+				double total = 0.0;
+				for (int i = 0; i < localNumPages; i++) {
+					total += mpjPR.floatRanks[i];
+				}
 				mpjPR.rankArray = new double[localNumPages];
-				MPI.COMM_WORLD.Recv(mpjPR.rankArray, 0, localNumPages, MPI.DOUBLE, 0, 1);
+				for (int i = 0; i < localNumPages; i++) {
+					mpjPR.rankArray[i] = mpjPR.floatRanks[i] / total;
+				}
+				mpjPR.floatRanks = null;
+				localFloats = null;
+				nextFloats = null;
+				localRanks = new double[localNumPages];
+				nextRanks = new double[localNumPages];
+				if (rank == 0) {
+					System.out.println("Switched to double precision after iteration " + iterationsDone);
+				}
 			}
-
-			// *** at every process, update the local copy of rankArray
-			mpjPR.size = localNumPages; // do this up
-			double localRanks[] = new double[localNumPages];
-			localRanks = Arrays.copyOf(mpjPR.rankArray, localNumPages);
-			localRanks = calculateLocalRanks(localRanks, mpjPR);
-
-			// *** send locally calculated ranks back to parent process
-			if (rank != 0) {
-				MPI.COMM_WORLD.Send(localRanks, 0, mpjPR.size, MPI.DOUBLE, 0, 1);
+			long iterationStart = System.nanoTime();
+			long computeStart = iterationStart;
+			long reduceStart;
+			long residualStart;
+			if (halo != null) {
+				// the exchange keeps its own compute and communication times
+				localResidual[0] = halo.iterate(mpjPR.rankArray, nextRanks, mpjPR.dampingFactor, mpjPR.maxNorm);
+				computeStart = reduceStart = residualStart = System.nanoTime();
+			} else if (mpjPR.floatRanks != null) {
+				calculateLocalRanks(mpjPR.floatRanks, localFloats, mpjPR, rank == 0);
+				reduceStart = System.nanoTime();
+				MPI.COMM_WORLD.Allreduce(localFloats, 0, nextFloats, 0, localNumPages, MPI.FLOAT, MPI.SUM);
+				residualStart = System.nanoTime();
+				localResidual[0] = 0.0;
+				for (int i : mpjPR.ownedPages) {
+					double change = Math.abs((double) nextFloats[i] - mpjPR.floatRanks[i]);
+					localResidual[0] = mpjPR.maxNorm ? Math.max(localResidual[0], change) : localResidual[0] + change;
+				}
 			} else {
-				mpjPR.rankArray = new double[mpjPR.size];
-				double[] remoteLocalRanks = new double[mpjPR.size];
-				for (int processNumber = 1; processNumber < size; processNumber++) {
-					MPI.COMM_WORLD.Recv(remoteLocalRanks, 0, mpjPR.size, MPI.DOUBLE, processNumber, 1);
-					// aggregate ranks at parent process
-					for (int i = 0; i < mpjPR.size; i++) {
-						mpjPR.rankArray[i] += remoteLocalRanks[i];
-					}
+				calculateLocalRanks(mpjPR.rankArray, localRanks, mpjPR, rank == 0);
+				reduceStart = System.nanoTime();
+
+				// sum the contributions of all processes at every process,
+				// there is no root that receives or sends P rank arrays
+				MPI.COMM_WORLD.Allreduce(localRanks, 0, nextRanks, 0, localNumPages, MPI.DOUBLE, MPI.SUM);
+				residualStart = System.nanoTime();
+				localResidual[0] = 0.0;
+				for (int i : mpjPR.ownedPages) {
+					double change = Math.abs(nextRanks[i] - mpjPR.rankArray[i]);
+					localResidual[0] = mpjPR.maxNorm ? Math.max(localResidual[0], change) : localResidual[0] + change;
 				}
-				// update parent process's values to rankArray
-				for (int i = 0; i < mpjPR.size; i++) {
-					mpjPR.rankArray[i] += localRanks[i];
+			}
+			if (mpjPR.floatRanks != null) {
+				float[] t = mpjPR.floatRanks;
+				mpjPR.floatRanks = nextFloats;
+				nextFloats = t;
+			} else {
+				double[] t = mpjPR.rankArray;
+				mpjPR.rankArray = nextRanks;
+				nextRanks = t;
+			}
+			long residualEnd = System.nanoTime();
+			MPI.COMM_WORLD.Allreduce(localResidual, 0, residual, 0, 1, MPI.DOUBLE, mpjPR.maxNorm ? MPI.MAX : MPI.SUM);
+			long iterationEnd = System.nanoTime();
+			iterationsDone++;
+			if (checkpointer != null && iterationsDone % mpjPR.checkpointEvery == 0) {
+				if (mpjPR.floatRanks != null) {
+					checkpointer.checkpoint(iterationsDone, mpjPR.floatRanks, true);
+				} else {
+					checkpointer.checkpoint(iterationsDone, mpjPR.rankArray, halo == null);
 				}
 			}
+
+			computeTime += (reduceStart - computeStart) + (residualEnd - residualStart);
+			communicationTime += (residualStart - reduceStart) + (iterationEnd - residualEnd);
+			if (rank == 0) {
+				System.out.println("Iteration " + iterationsDone + ": residual (" + (mpjPR.maxNorm ? "LINF" : "L1")
+						+ ") = " + residual[0] + ", time = " + (iterationEnd - iterationStart) / 1e6 + " ms"
+						+ (halo != null ? ", values sent = " + halo.getLastSent() : ""));
+			}
+			if (mpjPR.floatRanks != null && mpjPR.precision.equals("mixed")) {
+				// float iterations go on until the tolerance, or until
+				// rounding keeps the residual from dropping any further
+				double floor = FLOAT_ULPS * Math.ulp(1.0f) * (mpjPR.maxNorm ? 1.0 / localNumPages : 1.0);
+				refine = residual[0] < Math.max(mpjPR.tolerance, floor) || residual[0] >= previousResidual;
+				previousResidual = residual[0];
+			} else if (residual[0] < mpjPR.tolerance) {
+				break;
+			}
+		}
+		if (mpjPR.floatRanks != null) {
+			mpjPR.rankArray = new double[localNumPages];
+			for (int i = 0; i < localNumPages; i++) {
+				mpjPR.rankArray[i] = mpjPR.floatRanks[i];
+			}
+			mpjPR.floatRanks = null;
+		}
+		if (checkpointer != null) {
+			checkpointer.close();
+			if (rank == 0) {
+				System.out.println("Checkpoints: written = " + checkpointer.getWritten() + ", skipped = "
+						+ checkpointer.getSkipped());
+			}
+		}
+		if (halo != null) {
+			computeTime += halo.getComputeTime();
+			communicationTime += halo.getCommunicationTime();
+		}
+		if (rank == 0 && mpjPR.exchange.equals("overlap")) {
+			long hidden = halo.getHiddenTime();
+			System.out.println("Overlap: hidden communication = " + hidden / 1e6 + " ms, exposed = "
+					+ halo.getCommunicationTime() / 1e6 + " ms (" + 100.0 * hidden
+					/ Math.max(1, hidden + halo.getCommunicationTime()) + "% hidden)");
+		}
+		if (rank == 0) {
+			// one line per run, collected by scaling.sh
+			System.out.println("Scaling: processes = " + size + ", pages = " + localNumPages + ", iterations = "
+					+ iterationsDone + ", total = " + (System.nanoTime() - runStart) / 1e6 + " ms, compute = "
+					+ computeTime / 1e6 + " ms, communication = " + communicationTime / 1e6 + " ms");
+		}
+
+		// top pages: every process selects the top of the pages it owns and
+		// process 0 merges the partial lists, no process sorts all ranks
+		int k = mpjPR.topCount;
+		TopK localTop = new TopK(k);
+		for (int i = 0; i < mpjPR.ownedPages.length; i++) {
+			int page = mpjPR.ownedPages[i];
+			localTop.offer(page, mpjPR.rankArray[halo != null ? i : page]);
+		}
+		localTop.sort();
+		int[] topPages = new int[k];
+		Arrays.fill(topPages, -1);
+		System.arraycopy(localTop.getPages(), 0, topPages, 0, localTop.size());
+		int[] allTopPages = new int[k * size];
+		double[] allTopValues = new double[k * size];
+		MPI.COMM_WORLD.Gather(topPages, 0, k, MPI.INT, allTopPages, 0, k, MPI.INT, 0);
+		MPI.COMM_WORLD.Gather(localTop.getValues(), 0, k, MPI.DOUBLE, allTopValues, 0, k, MPI.DOUBLE, 0);
+		if (halo != null && mpjPR.outputAll) {
+			gatherRanks(mpjPR, owner, rank, size);
 		}
 
 		if (rank == 0) {
-			mpjPR.printValues();
+			TopK top = new TopK(k);
+			for (int i = 0; i < allTopPages.length; i++) {
+				if (allTopPages[i] >= 0) {
+					top.offer(allTopPages[i], allTopValues[i]);
+				}
+			}
+			top.sort();
+			int[] pages = Arrays.copyOf(top.getPages(), k);
+			Arrays.fill(pages, top.size(), k, -1);
+			mpjPR.iterations = iterationsDone;
+			mpjPR.size = localNumPages;
+			mpjPR.printValues(pages, top.getValues());
 		}
 		MPI.Finalize();
 
 	}
 
-	private static double[] calculateLocalRanks(double[] localRanks, MPJPageRankMain mpjPR) {
-		double[] nextLocalRanks = new double[mpjPR.size];
-		double constantFactor = (1 - mpjPR.dampingFactor) / mpjPR.size;
-		double myRankContribution = 0.0;
-		Iterator it = mpjPR.adjList.entrySet().iterator();
-		while (it.hasNext()) {
-			Map.Entry pair = (Map.Entry) it.next();
-			int pageNumber = (int) pair.getKey();
-			ArrayList<Integer> outLinks = mpjPR.adjList.get(pageNumber);
-			// System.out.println(pageNumber + ": " + outLinks);
-
-			myRankContribution = localRanks[pageNumber] / outLinks.size();
-
-			for (int page : outLinks) {
-				nextLocalRanks[page] = myRankContribution + nextLocalRanks[page];
+	// collect the owned ranks of every process in the rank array of process
+	// 0, for the output of all ranks in halo mode
+	private static void gatherRanks(MPJPageRankMain mpjPR, int[] owner, int rank, int size) {
+		if (rank != 0) {
+			MPI.COMM_WORLD.Send(mpjPR.rankArray, 0, mpjPR.rankArray.length, MPI.DOUBLE, 0, 5);
+			return;
+		}
+		double[] ranks = new double[owner.length];
+		for (int i = 0; i < mpjPR.ownedPages.length; i++) {
+			ranks[mpjPR.ownedPages[i]] = mpjPR.rankArray[i];
+		}
+		for (int processNumber = 1; processNumber < size; processNumber++) {
+			int[] pages = pagesOf(owner, processNumber);
+			double[] values = new double[pages.length];
+			MPI.COMM_WORLD.Recv(values, 0, pages.length, MPI.DOUBLE, processNumber, 5);
+			for (int i = 0; i < pages.length; i++) {
+				ranks[pages[i]] = values[i];
 			}
+		}
+		mpjPR.rankArray = ranks;
+	}
 
+	// pages assigned to process part, in increasing order
+	private static int[] pagesOf(int[] owner, int part) {
+		int count = 0;
+		for (int p : owner) {
+			if (p == part) {
+				count++;
+			}
+		}
+		int[] pages = new int[count];
+		count = 0;
+		for (int page = 0; page < owner.length; page++) {
+			if (owner[page] == part) {
+				pages[count++] = page;
+			}
 		}
+		return pages;
+	}
 
-		for (int i = 0; i < mpjPR.size; i++) {
-			if (nextLocalRanks[i] > 0) {
-				nextLocalRanks[i] = constantFactor + mpjPR.dampingFactor * nextLocalRanks[i];
+	// CSR partition of the owned pages from the binary graph, read in runs
+	// of consecutive pages
+	private static void readOwnedPages(MPJPageRankMain mpjPR) throws IOException {
+		int[] offsets = mpjPR.binaryGraph.getOffsets();
+		int[] pages = mpjPR.ownedPages;
+		mpjPR.ownedOffsets = new int[pages.length + 1];
+		for (int i = 0; i < pages.length; i++) {
+			mpjPR.ownedOffsets[i + 1] = mpjPR.ownedOffsets[i] + offsets[pages[i] + 1] - offsets[pages[i]];
+		}
+		mpjPR.ownedTargets = new int[mpjPR.ownedOffsets[pages.length]];
+		int i = 0;
+		while (i < pages.length) {
+			int run = i + 1;
+			while (run < pages.length && pages[run] == pages[run - 1] + 1) {
+				run++;
 			}
+			int[] targets = mpjPR.binaryGraph.readTargets(pages[i], pages[run - 1] + 1);
+			System.arraycopy(targets, 0, mpjPR.ownedTargets, mpjPR.ownedOffsets[i], targets.length);
+			i = run;
 		}
+	}
+
+	// Contribution of the pages owned by this process to the next ranks. The
+	// rank of owned dangling pages is summed and spread over all pages; the
+	// teleport term is added by one process only, so that the parts sum up
+	// to the new rank array.
+	private static void calculateLocalRanks(double[] localRanks, double[] nextLocalRanks, MPJPageRankMain mpjPR,
+			boolean addTeleport) {
+		Arrays.fill(nextLocalRanks, 0.0);
+		double constantFactor = addTeleport ? (1 - mpjPR.dampingFactor) / mpjPR.size : 0.0;
+		double danglingRank = 0.0;
+		int[] offsets = mpjPR.ownedOffsets;
+		int[] targets = mpjPR.ownedTargets;
+		for (int i = 0; i + 1 < offsets.length; i++) {
+			int pageNumber = mpjPR.ownedPages[i];
+			if (offsets[i + 1] == offsets[i]) {
+				danglingRank += localRanks[pageNumber];
+				continue;
+			}
+			double myRankContribution = localRanks[pageNumber] / (offsets[i + 1] - offsets[i]);
+			for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+				nextLocalRanks[targets[e]] += myRankContribution;
+			}
+		}
+
+		constantFactor += mpjPR.dampingFactor * danglingRank / mpjPR.size;
+		for (int i = 0; i < mpjPR.size; i++) {
+			nextLocalRanks[i] = constantFactor + mpjPR.dampingFactor * nextLocalRanks[i];
+		}
+	}
 
-		return nextLocalRanks;
+	// The same in float precision; only the dangling rank is summed in
+	// double.
+	private static void calculateLocalRanks(float[] localRanks, float[] nextLocalRanks, MPJPageRankMain mpjPR,
+			boolean addTeleport) {
+		Arrays.fill(nextLocalRanks, 0.0f);
+		double constantFactor = addTeleport ? (1 - mpjPR.dampingFactor) / mpjPR.size : 0.0;
+		double danglingRank = 0.0;
+		int[] offsets = mpjPR.ownedOffsets;
+		int[] targets = mpjPR.ownedTargets;
+		for (int i = 0; i + 1 < offsets.length; i++) {
+			int pageNumber = mpjPR.ownedPages[i];
+			if (offsets[i + 1] == offsets[i]) {
+				danglingRank += localRanks[pageNumber];
+				continue;
+			}
+			float myRankContribution = localRanks[pageNumber] / (offsets[i + 1] - offsets[i]);
+			for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+				nextLocalRanks[targets[e]] += myRankContribution;
+			}
+		}
 
+		float constant = (float) (constantFactor + mpjPR.dampingFactor * danglingRank / mpjPR.size);
+		float damping = (float) mpjPR.dampingFactor;
+		for (int i = 0; i < mpjPR.size; i++) {
+			nextLocalRanks[i] = constant + damping * nextLocalRanks[i];
+		}
 	}
 
 }
@@ -0,0 +1,289 @@
+package com.rohit.MPJPageRank;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import mpi.MPI;
+
+/**
+ * Checkpoints of the ranks a process owns, written by a background thread.
+ *
+ * A checkpoint copies the owned ranks into a buffer and hands the buffer to
+ * the writer thread, so the iteration loop never waits for the disk. If the
+ * previous checkpoint of any process is still being written, all processes
+ * skip the new one. A checkpoint file is written under a temporary name and
+ * renamed when it is complete, so a failure never leaves a partial file
+ * behind.
+ *
+ * File checkpoint-RANK-ITERATION.bin, little endian: int magic "PRCK", int
+ * iteration, int processes, int owned pages, long fingerprint of the owned
+ * pages, then one double per owned page.
+ *
+ * At every checkpoint the processes also agree on the newest iteration
+ * that all of them have written, and delete only older files. A restart
+ * resumes from the newest iteration that every process has a valid file
+ * for, which is never older than that.
+ */
+public class RankCheckpointer {
+	public static final int MAGIC = 0x4B435250; // "PRCK" in little endian
+
+	private static final int HEADER_BYTES = 24;
+
+	private final File directory;
+	private final int rank;
+	private final int processes;
+	private final int[] ownedPages;
+	// a restart needs the same partition
+	private final long fingerprint;
+	private final ExecutorService writer;
+	private final double[] buffer;
+	// checkpoint being written, null if none
+	private Future<?> pending = null;
+	// newest iteration written completely, set by the writer thread
+	private volatile int lastWritten = 0;
+	private int written = 0;
+	private int skipped = 0;
+
+	public RankCheckpointer(String directory, int rank, int processes, int[] ownedPages) throws IOException {
+		this.directory = new File(directory);
+		if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+			throw new IOException("Cannot create checkpoint directory " + directory);
+		}
+		this.rank = rank;
+		this.processes = processes;
+		this.ownedPages = ownedPages;
+		long hash = 1125899906842597L;
+		for (int page : ownedPages) {
+			hash = 31 * hash + page;
+		}
+		this.fingerprint = hash;
+		this.buffer = new double[ownedPages.length];
+		this.writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "checkpoint-writer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Start writing the owned ranks after iteration, unless a previous
+	 * checkpoint is still being written somewhere. Called by every process
+	 * after the same iterations.
+	 *
+	 * @param global
+	 *            true if ranks is indexed by page, false if it holds the
+	 *            owned pages by local index
+	 * @return false if the checkpoint was skipped
+	 */
+	public boolean checkpoint(int iteration, double[] ranks, boolean global) {
+		if (!agree()) {
+			return false;
+		}
+		for (int i = 0; i < ownedPages.length; i++) {
+			buffer[i] = global ? ranks[ownedPages[i]] : ranks[i];
+		}
+		submit(iteration);
+		return true;
+	}
+
+	// float ranks, stored as doubles in the same file format
+	public boolean checkpoint(int iteration, float[] ranks, boolean global) {
+		if (!agree()) {
+			return false;
+		}
+		for (int i = 0; i < ownedPages.length; i++) {
+			buffer[i] = global ? ranks[ownedPages[i]] : ranks[i];
+		}
+		submit(iteration);
+		return true;
+	}
+
+	// delete the files every process has a newer checkpoint for, and decide
+	// together whether to write this one
+	private boolean agree() {
+		// any process still writing, and minus the newest iteration all
+		// processes have written
+		int[] local = new int[] { pending != null && !pending.isDone() ? 1 : 0, -lastWritten };
+		int[] all = new int[2];
+		MPI.COMM_WORLD.Allreduce(local, 0, all, 0, 2, MPI.INT, MPI.MAX);
+		final int keep = -all[1];
+		writer.submit(new Runnable() {
+			public void run() {
+				for (int old : iterations()) {
+					if (old < keep) {
+						file(old).delete();
+					}
+				}
+			}
+		});
+		if (all[0] == 1) {
+			skipped++;
+			return false;
+		}
+		return true;
+	}
+
+	// write the buffer in the background
+	private void submit(final int iteration) {
+		written++;
+		pending = writer.submit(new Runnable() {
+			public void run() {
+				try {
+					write(iteration);
+					lastWritten = iteration;
+				} catch (IOException e) {
+					System.err.println("Checkpoint of iteration " + iteration + " failed: " + e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Load the newest checkpoint every process has, called by every process.
+	 *
+	 * @param global
+	 *            true to store the owned ranks by page, false by local index
+	 * @return the iteration restored, 0 if there is no common checkpoint
+	 */
+	public int restore(double[] ranks, boolean global, int maxIteration) throws IOException {
+		int[] present = new int[maxIteration + 1];
+		for (int iteration : iterations()) {
+			if (iteration <= maxIteration && valid(iteration)) {
+				present[iteration] = 1;
+			}
+		}
+		int[] common = new int[maxIteration + 1];
+		MPI.COMM_WORLD.Allreduce(present, 0, common, 0, maxIteration + 1, MPI.INT, MPI.MIN);
+		int iteration = maxIteration;
+		while (iteration > 0 && common[iteration] == 0) {
+			iteration--;
+		}
+		if (iteration == 0) {
+			return 0;
+		}
+		ByteBuffer bytes = readAll(file(iteration));
+		bytes.position(HEADER_BYTES);
+		for (int i = 0; i < ownedPages.length; i++) {
+			double value = bytes.getDouble();
+			if (global) {
+				ranks[ownedPages[i]] = value;
+			} else {
+				ranks[i] = value;
+			}
+		}
+		lastWritten = iteration;
+		return iteration;
+	}
+
+	// delete the files of this process, for a run that does not restart
+	public void clear() {
+		for (int iteration : iterations()) {
+			file(iteration).delete();
+		}
+	}
+
+	// wait for the last checkpoint to be written
+	public void close() {
+		writer.shutdown();
+		try {
+			writer.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public int getWritten() {
+		return written;
+	}
+
+	public int getSkipped() {
+		return skipped;
+	}
+
+	private void write(int iteration) throws IOException {
+		ByteBuffer bytes = ByteBuffer.allocate(HEADER_BYTES + 8 * buffer.length).order(ByteOrder.LITTLE_ENDIAN);
+		bytes.putInt(MAGIC).putInt(iteration).putInt(processes).putInt(buffer.length).putLong(fingerprint);
+		bytes.asDoubleBuffer().put(buffer);
+		bytes.rewind();
+		File temporary = new File(directory, "checkpoint-" + rank + ".tmp");
+		FileOutputStream out = new FileOutputStream(temporary);
+		try {
+			FileChannel channel = out.getChannel();
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+			channel.force(true);
+		} finally {
+			out.close();
+		}
+		File target = file(iteration);
+		target.delete();
+		if (!temporary.renameTo(target)) {
+			throw new IOException("Cannot rename " + temporary + " to " + target);
+		}
+	}
+
+	// a complete checkpoint of this partition
+	private boolean valid(int iteration) throws IOException {
+		File file = file(iteration);
+		if (file.length() != HEADER_BYTES + 8L * ownedPages.length) {
+			return false;
+		}
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			in.getChannel().read(header, 0);
+		} finally {
+			in.close();
+		}
+		return header.getInt(0) == MAGIC && header.getInt(4) == iteration && header.getInt(8) == processes
+				&& header.getInt(12) == ownedPages.length && header.getLong(16) == fingerprint;
+	}
+
+	private ByteBuffer readAll(File file) throws IOException {
+		ByteBuffer bytes = ByteBuffer.allocate((int) file.length()).order(ByteOrder.LITTLE_ENDIAN);
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			while (bytes.hasRemaining() && in.getChannel().read(bytes) >= 0) {
+			}
+		} finally {
+			in.close();
+		}
+		bytes.flip();
+		return bytes;
+	}
+
+	private File file(int iteration) {
+		return new File(directory, "checkpoint-" + rank + "-" + iteration + ".bin");
+	}
+
+	// iterations of the checkpoint files of this process
+	private int[] iterations() {
+		String prefix = "checkpoint-" + rank + "-";
+		String[] names = directory.list();
+		int[] found = new int[names == null ? 0 : names.length];
+		int count = 0;
+		for (int i = 0; i < found.length; i++) {
+			if (names[i].startsWith(prefix) && names[i].endsWith(".bin")) {
+				try {
+					int iteration = Integer.parseInt(names[i].substring(prefix.length(), names[i].length() - 4));
+					found[count++] = iteration;
+				} catch (NumberFormatException e) {
+					// not one of ours
+				}
+			}
+		}
+		int[] iterations = new int[count];
+		System.arraycopy(found, 0, iterations, 0, count);
+		return iterations;
+	}
+}
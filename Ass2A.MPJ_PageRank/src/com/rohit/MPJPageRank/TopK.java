@@ -0,0 +1,121 @@
+package com.rohit.MPJPageRank;
+
+/**
+ * Keeps the k pages with the highest rank seen so far, in a bounded min-heap
+ * over primitive arrays. Selecting the top k of n ranks costs O(n log k)
+ * and allocates nothing per page. Equal ranks are ordered by page id.
+ */
+public class TopK {
+	private final int k;
+	// heap of the best pages found so far, the worst one at index 0
+	private final int[] pages;
+	private final double[] values;
+	private int count = 0;
+
+	public TopK(int k) {
+		this.k = k;
+		this.pages = new int[k];
+		this.values = new double[k];
+	}
+
+	/**
+	 * Top k entries of values[from] .. values[to - 1], using the array index
+	 * as the page id.
+	 */
+	public static TopK select(double[] values, int from, int to, int k) {
+		TopK top = new TopK(k);
+		for (int page = from; page < to; page++) {
+			top.offer(page, values[page]);
+		}
+		return top;
+	}
+
+	public void offer(int page, double value) {
+		if (k == 0) {
+			return;
+		}
+		if (count < k) {
+			pages[count] = page;
+			values[count] = value;
+			siftUp(count++);
+		} else if (worse(pages[0], values[0], page, value)) {
+			pages[0] = page;
+			values[0] = value;
+			siftDown(0, count);
+		}
+	}
+
+	// add the entries kept by another (e.g. per partition) selection
+	public void merge(TopK other) {
+		for (int i = 0; i < other.count; i++) {
+			offer(other.pages[i], other.values[i]);
+		}
+	}
+
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Sort the kept entries in place, best first. After this call the object
+	 * should only be read through getPages() and getValues().
+	 */
+	public TopK sort() {
+		// heap sort: moving the worst entry to the end leaves the best first
+		for (int end = count - 1; end > 0; end--) {
+			swap(0, end);
+			siftDown(0, end);
+		}
+		return this;
+	}
+
+	public int[] getPages() {
+		return pages;
+	}
+
+	public double[] getValues() {
+		return values;
+	}
+
+	// true if entry a ranks below entry b
+	private static boolean worse(int pageA, double valueA, int pageB, double valueB) {
+		return valueA < valueB || (valueA == valueB && pageA > pageB);
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!worse(pages[i], values[i], pages[parent], values[parent])) {
+				break;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i, int end) {
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= end) {
+				break;
+			}
+			if (child + 1 < end && worse(pages[child + 1], values[child + 1], pages[child], values[child])) {
+				child++;
+			}
+			if (!worse(pages[child], values[child], pages[i], values[i])) {
+				break;
+			}
+			swap(i, child);
+			i = child;
+		}
+	}
+
+	private void swap(int a, int b) {
+		int page = pages[a];
+		pages[a] = pages[b];
+		pages[b] = page;
+		double value = values[a];
+		values[a] = values[b];
+		values[b] = value;
+	}
+}
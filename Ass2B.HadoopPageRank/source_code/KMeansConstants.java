@@ -12,4 +12,13 @@ public class KMeansConstants {
 	public static final String WORK_DIR = "work_dir";
 	public static final String NUM_MAPPERS = "num_mappers";
 	public static final String NUM_ITERATONS = "num_iterations";
+	// run all iterations inside one job, the points stay in memory
+	public static final String ITERATE_IN_MAPPER = "iterate_in_mapper";
+	// mini-batch K-means: points sampled per mapper and iteration, 0 for
+	// full-batch Lloyd iterations
+	public static final String BATCH_SIZE = "batch_size";
+	// skip distance computations with Hamerly's bounds
+	public static final String PRUNING = "pruning";
+	// threads sharing the points of a mapper, set with -D num_threads=<n>
+	public static final String NUM_THREADS = "num_threads";
 }
\ No newline at end of file
@@ -20,6 +20,7 @@ import org.apache.hadoop.util.ToolRunner;
 import edu.iu.fileformat.MultiFileInputFormat;
 
 public class KmeansMapCollective extends Configured implements Tool {
+	private static final int DEFAULT_BATCH_SIZE = 1000;
 
 	public static void main(String[] argv) throws Exception {
 		int res = ToolRunner.run(new Configuration(), new KmeansMapCollective(), argv);
@@ -28,10 +29,8 @@ public class KmeansMapCollective extends Configured implements Tool {
 
 	@Override
 	public int run(String[] args) throws Exception {
-		if (args.length < 6) {
-			System.err.println("Usage: KmeansMapCollective <numOfDataPoints> <num of Centroids> "
-					+ "<size of vector> <number of map tasks> <number of iteration> <workDir> <localDir>");
-			ToolRunner.printGenericCommandUsage(System.err);
+		if (args.length < 7) {
+			printUsage();
 			return -1;
 		}
 
@@ -42,6 +41,20 @@ public class KmeansMapCollective extends Configured implements Tool {
 		int numIteration = Integer.parseInt(args[4]);
 		String workDir = args[5];
 		String localDir = args[6];
+		String mode = args.length > 7 ? args[7] : "mapper";
+		if (!mode.equals("mapper") && !mode.equals("job") && !mode.equals("hamerly") && !mode.equals("minibatch")) {
+			System.err.println("Unknown iteration mode: " + mode);
+			return -1;
+		}
+		int batchSize = 0;
+		if (mode.equals("minibatch")) {
+			batchSize = args.length > 8 ? Integer.parseInt(args[8]) : DEFAULT_BATCH_SIZE;
+			if (batchSize < 1) {
+				System.err.println("Batch size must be at least 1: " + batchSize);
+				printUsage();
+				return -1;
+			}
+		}
 
 		System.out.println("Number of Map Tasks = " + numMapTasks);
 		System.out.println("Len : " + args.length);
@@ -51,13 +64,26 @@ public class KmeansMapCollective extends Configured implements Tool {
 		}
 		System.out.println();
 
-		launch(numOfDataPoints, numCentroids, sizeOfVector, numMapTasks, numIteration, workDir, localDir);
+		launch(numOfDataPoints, numCentroids, sizeOfVector, numMapTasks, numIteration, workDir, localDir,
+				mode, batchSize);
 		System.out.println("HarpKmeans Completed");
 		return 0;
 	}
 
+	private static void printUsage() {
+		System.err.println("Usage: KmeansMapCollective <numOfDataPoints> <num of Centroids> "
+				+ "<size of vector> <number of map tasks> <number of iteration> <workDir> <localDir> "
+				+ "[mapper|job|hamerly|minibatch [batch size]]");
+		System.err.println("  mapper: iterate inside one job (default), job: one job per iteration,");
+		System.err.println("  hamerly: like mapper, skipping distances with Hamerly's bounds, same result,");
+		System.err.println("  minibatch: mini-batch K-means sampling <batch size> points per mapper and iteration"
+				+ " (default " + DEFAULT_BATCH_SIZE + ")");
+		System.err.println("  -D " + KMeansConstants.NUM_THREADS + "=<n>: threads per mapper (default 1)");
+		ToolRunner.printGenericCommandUsage(System.err);
+	}
+
 	void launch(int numOfDataPoints, int numCentroids, int sizeOfVector, int numMapTasks, int numIteration,
-			String workDir, String localDir)
+			String workDir, String localDir, String mode, int batchSize)
 			throws IOException, URISyntaxException, InterruptedException, ExecutionException, ClassNotFoundException {
 
 		Configuration configuration = getConf();
@@ -80,16 +106,21 @@ public class KmeansMapCollective extends Configured implements Tool {
 		long startTime = System.currentTimeMillis();
 
 		runKMeansAllReduce(numOfDataPoints, numCentroids, sizeOfVector, numIteration, 0, numMapTasks, configuration,
-				workDirPath, dataDir, cDir, outDir);
+				workDirPath, dataDir, cDir, outDir, mode, batchSize);
 		long endTime = System.currentTimeMillis();
 		System.out.println("Total K-means Execution Time: " + (endTime - startTime));
 	}
 
+	// One job per iteration, or a single job whose mappers run all the
+	// iterations and write the centroids once at the end. Every mode but job
+	// iterates in the mappers.
 	private void runKMeansAllReduce(int numOfDataPoints, int numCentroids, int vectorSize, int numIterations, int JobID,
-			int numMapTasks, Configuration configuration, Path workDirPath, Path dataDir, Path cDir, Path outDir)
+			int numMapTasks, Configuration configuration, Path workDirPath, Path dataDir, Path cDir, Path outDir,
+			String mode, int batchSize)
 			throws IOException, URISyntaxException, InterruptedException, ClassNotFoundException {
 
-		for (int iter = 0; iter < numIterations; iter++) {
+		int numJobs = mode.equals("job") ? numIterations : 1;
+		for (int iter = 0; iter < numJobs; iter++) {
 			JobID += iter;
 			System.out.println("Starting Job");
 			long jobSubmitTime;
@@ -103,7 +134,7 @@ public class KmeansMapCollective extends Configured implements Tool {
 						+ new SimpleDateFormat("HH:mm:ss.SSS").format(Calendar.getInstance().getTime()));
 
 				Job kmeansJob = configureKMeansJob(numOfDataPoints, numCentroids, vectorSize, numMapTasks,
-						configuration, workDirPath, dataDir, cDir, outDir, iter, numIterations);
+						configuration, workDirPath, dataDir, cDir, outDir, iter, numIterations, mode, batchSize);
 
 				System.out.println("| Job#" + iter + " configure in " + (System.currentTimeMillis() - jobSubmitTime)
 						+ " miliseconds |");
@@ -133,7 +164,7 @@ public class KmeansMapCollective extends Configured implements Tool {
 
 	private Job configureKMeansJob(int numOfDataPoints, int numCentroids, int vectorSize, int numMapTasks,
 			Configuration configuration, Path workDirPath, Path dataDir, Path cDir, Path outDir, int jobID,
-			int numIterations) throws IOException, URISyntaxException {
+			int numIterations, String mode, int batchSize) throws IOException, URISyntaxException {
 
 		Job job = Job.getInstance(configuration, "kmeans_job_" + jobID);
 		Configuration jobConfig = job.getConfiguration();
@@ -162,6 +193,9 @@ public class KmeansMapCollective extends Configured implements Tool {
 		jobConfig.set(KMeansConstants.WORK_DIR, workDirPath.toString());
 		jobConfig.setInt(KMeansConstants.NUM_MAPPERS, numMapTasks);
 		jobConfig.setInt(KMeansConstants.NUM_ITERATONS, numIterations);
+		jobConfig.setBoolean(KMeansConstants.ITERATE_IN_MAPPER, !mode.equals("job"));
+		jobConfig.setInt(KMeansConstants.BATCH_SIZE, batchSize);
+		jobConfig.setBoolean(KMeansConstants.PRUNING, mode.equals("hamerly"));
 		return job;
 	}
 
@@ -13,8 +13,16 @@ import org.apache.hadoop.mapred.CollectiveMapper;
 import java.io.*;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 public class KmeansMapper extends CollectiveMapper<String, String, Object, Object> {
+	// Hamerly: a distance is only skipped if the bounds are apart by this
+	// relative margin, so rounding in the bounds never changes a result
+	private static final double BOUND_MARGIN = 1e-9;
 
 	private int numofIterations;
 	private int numCenPartitions;
@@ -22,6 +30,39 @@ public class KmeansMapper extends CollectiveMapper<String, String, Object, Objec
 	private int jobID;
 	private int vectorSize;
 	private int numMappers;
+	// all iterations in this task, otherwise one iteration per job
+	private boolean iterateInMapper;
+	// mini-batch K-means: points sampled per iteration, 0 for Lloyd
+	private int batchSize;
+	// points of this mapper, row-major: point i is points[i * vectorSize ..
+	// (i + 1) * vectorSize - 1]
+	private double[] points;
+	private int numPoints;
+	// the centroids of the current iteration in the same layout, and their
+	// partition ids
+	private double[] centroids = new double[0];
+	private int[] centroidIDs = new int[0];
+	private int numCentroidRows;
+	// per thread, the sums of the points assigned to every centroid row,
+	// followed by their count, vectorSize + 1 values per row; reused across
+	// iterations and added up before the allreduce
+	private double[][] threadSums;
+	// threads sharing the points of this mapper, the pool is null for one
+	private int numThreads;
+	private ExecutorService pool;
+	// mini-batch K-means: the points sampled by every thread
+	private Random[] randoms;
+	// Hamerly's algorithm, for every point: the id of its centroid, an upper
+	// bound on the distance to it and a lower bound on the distance to any
+	// other centroid; null before the first pruned iteration
+	private boolean pruning;
+	private int[] assignedIDs;
+	private double[] upper;
+	private double[] lower;
+	// the centroids the bounds were computed for, vectorSize values per id
+	private double[] previousCentroids;
+	// distances computed by the last pruned iteration
+	private long distances;
 
 	@Override
 	public void setup(Context context) throws IOException, InterruptedException {
@@ -34,6 +75,11 @@ public class KmeansMapper extends CollectiveMapper<String, String, Object, Objec
 		numCenPartitions = numMappers;
 		vectorSize = configuration.getInt(KMeansConstants.VECTOR_SIZE, 20);
 		numofIterations = configuration.getInt(KMeansConstants.NUM_ITERATONS, 1);
+		iterateInMapper = configuration.getBoolean(KMeansConstants.ITERATE_IN_MAPPER, false);
+		batchSize = configuration.getInt(KMeansConstants.BATCH_SIZE, 0);
+		pruning = configuration.getBoolean(KMeansConstants.PRUNING, false);
+		numThreads = Math.max(1, configuration.getInt(KMeansConstants.NUM_THREADS, 1));
+		threadSums = new double[numThreads][0];
 
 		long endTime = System.currentTimeMillis();
 		LOG.info("config (ms) :" + (endTime - startTime));
@@ -50,7 +96,23 @@ public class KmeansMapper extends CollectiveMapper<String, String, Object, Objec
 			pointFiles.add(currentValue);
 		}
 		Configuration conf = context.getConfiguration();
-		runKmeans(pointFiles, conf, context);
+		if (numThreads > 1) {
+			// the calling thread runs the first range itself
+			pool = Executors.newFixedThreadPool(numThreads - 1, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "kmeans-worker");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		try {
+			runKmeans(pointFiles, conf, context);
+		} finally {
+			if (pool != null) {
+				pool.shutdown();
+			}
+		}
 		LOG.info("Total times in master view: " + (System.currentTimeMillis() - startTime));
 	}
 
@@ -68,42 +130,297 @@ public class KmeansMapper extends CollectiveMapper<String, String, Object, Objec
 	}
 
 	public void kmeanComputation(Table<DoubleArray> newCenTable, Table<DoubleArray> currentCenTable,
-			ArrayList<DoubleArray> dataPoints) {
-
-		for (DoubleArray aPoint : dataPoints) {
-			// For each data point, find the nearest centroid
-			double minDist = Double.MAX_VALUE;
-			double tempDist = 0;
-
-			int nearestPartitionID = -1;
-			for (Partition aCentroidPartition : currentCenTable.getPartitions()) {
-				DoubleArray aCentroid = (DoubleArray) aCentroidPartition.get();
-				tempDist = calcEuclideanDistance(aPoint, aCentroid, vectorSize);
-				if (tempDist < minDist) {
-					minDist = tempDist;
-					nearestPartitionID = aCentroidPartition.id();
+			final double[] points) throws IOException {
+		loadCentroidRows(currentCenTable);
+		runThreads(numPoints, new PointRange() {
+			public void run(int thread, int from, int to) {
+				double[] sums = threadSums[thread];
+				for (int i = from; i < to; i++) {
+					// For each data point, find the nearest centroid and add it
+					// to its sums
+					addPoint(sums, points, i * vectorSize, nearestCentroid(points, i * vectorSize));
+				}
+			}
+		});
+		addSums(newCenTable);
+	}
+
+	// The same assignment as kmeanComputation, with Hamerly's algorithm
+	// ("Making k-means even faster", 2010). A point keeps its centroid
+	// without computing any distance while the upper bound on the distance
+	// to it is below both the lower bound on the distance to any other
+	// centroid and half the distance from its centroid to the nearest other
+	// centroid. Moving centroids loosen the bounds by how far they moved.
+	// When the bounds do not separate, the distance to the own centroid is
+	// computed; only if that does not separate either are all distances
+	// computed. Only one lower bound per point is kept (Elkan keeps k), so
+	// the memory stays linear in the points for high k.
+	public void prunedComputation(Table<DoubleArray> newCenTable, Table<DoubleArray> currentCenTable,
+			final double[] points) throws IOException {
+		loadCentroidRows(currentCenTable);
+		int maxID = 0;
+		for (int row = 0; row < numCentroidRows; row++) {
+			maxID = Math.max(maxID, centroidIDs[row]);
+		}
+		// distances computed by every thread
+		final long[] computed = new long[numThreads];
+		if (assignedIDs == null) {
+			assignedIDs = new int[numPoints];
+			upper = new double[numPoints];
+			lower = new double[numPoints];
+			runThreads(numPoints, new PointRange() {
+				public void run(int thread, int from, int to) {
+					for (int i = from; i < to; i++) {
+						addPoint(threadSums[thread], points, i * vectorSize, assignAll(points, i));
+					}
+					computed[thread] = (long) (to - from) * numCentroidRows;
+				}
+			});
+		} else {
+			// row of every centroid id, and how far every centroid moved
+			final int[] rows = new int[maxID + 1];
+			final double[] drift = new double[numCentroidRows];
+			int maxRow = -1;
+			double maxDrift = 0;
+			double secondDrift = 0;
+			for (int row = 0; row < numCentroidRows; row++) {
+				rows[centroidIDs[row]] = row;
+				drift[row] = Math.sqrt(squaredDistance(centroids, row * vectorSize, previousCentroids, centroidIDs[row]
+						* vectorSize));
+				if (drift[row] > maxDrift) {
+					secondDrift = maxDrift;
+					maxDrift = drift[row];
+					maxRow = row;
+				} else if (drift[row] > secondDrift) {
+					secondDrift = drift[row];
+				}
+			}
+			final double[] half = halfSeparations();
+			final int fastestRow = maxRow;
+			final double fastest = maxDrift;
+			final double secondFastest = secondDrift;
+
+			runThreads(numPoints, new PointRange() {
+				public void run(int thread, int from, int to) {
+					long count = 0;
+					for (int i = from; i < to; i++) {
+						int row = rows[assignedIDs[i]];
+						upper[i] += drift[row];
+						lower[i] -= row == fastestRow ? secondFastest : fastest;
+						double bound = Math.max(half[row], lower[i]);
+						if (upper[i] * (1 + BOUND_MARGIN) >= bound) {
+							upper[i] = Math.sqrt(squaredDistance(points, i * vectorSize, centroids, row * vectorSize));
+							count++;
+							if (upper[i] * (1 + BOUND_MARGIN) >= bound) {
+								row = assignAll(points, i);
+								count += numCentroidRows;
+							}
+						}
+						addPoint(threadSums[thread], points, i * vectorSize, row);
+					}
+					computed[thread] = count;
+				}
+			});
+		}
+		distances = 0;
+		for (long count : computed) {
+			distances += count;
+		}
+		// the bounds now hold for these centroids
+		if (previousCentroids == null || previousCentroids.length < (maxID + 1) * vectorSize) {
+			previousCentroids = new double[(maxID + 1) * vectorSize];
+		}
+		for (int row = 0; row < numCentroidRows; row++) {
+			System.arraycopy(centroids, row * vectorSize, previousCentroids, centroidIDs[row] * vectorSize, vectorSize);
+		}
+		addSums(newCenTable);
+	}
+
+	// Compute the distances from point i to every centroid, assign it to the
+	// nearest one as nearestCentroid does, and reset its bounds. Returns the
+	// row of the centroid.
+	private int assignAll(double[] points, int i) {
+		int offset = i * vectorSize;
+		double minDist = Double.MAX_VALUE;
+		double secondDist = Double.MAX_VALUE;
+		int nearestRow = -1;
+		for (int row = 0; row < numCentroidRows; row++) {
+			double tempDist = squaredDistance(points, offset, centroids, row * vectorSize);
+			if (tempDist < minDist) {
+				secondDist = minDist;
+				minDist = tempDist;
+				nearestRow = row;
+			} else if (tempDist < secondDist) {
+				secondDist = tempDist;
+			}
+		}
+		assignedIDs[i] = centroidIDs[nearestRow];
+		upper[i] = Math.sqrt(minDist);
+		lower[i] = Math.sqrt(secondDist);
+		return nearestRow;
+	}
+
+	// half the distance from every centroid row to the nearest other one: a
+	// point closer than that to its centroid is closer to it than to any
+	// other centroid
+	private double[] halfSeparations() {
+		double[] half = new double[numCentroidRows];
+		Arrays.fill(half, Double.MAX_VALUE);
+		for (int row = 0; row < numCentroidRows; row++) {
+			for (int other = row + 1; other < numCentroidRows; other++) {
+				double separation = 0.5 * Math.sqrt(squaredDistance(centroids, row * vectorSize, centroids, other
+						* vectorSize));
+				half[row] = Math.min(half[row], separation);
+				half[other] = Math.min(half[other], separation);
+			}
+		}
+		return half;
+	}
+
+	// Mini-batch K-means step (Sculley, "Web-Scale K-Means Clustering",
+	// 2010): sample batchSize points, with replacement, and add each one to
+	// the partition of its nearest centroid. Only the centroids that got a
+	// point have a partition, so the allreduce that follows is sparse. Every
+	// thread samples its share of the batch.
+	public void miniBatchComputation(Table<DoubleArray> batchTable, Table<DoubleArray> currentCenTable,
+			final double[] points) throws IOException {
+		if (numPoints == 0) {
+			return;
+		}
+		loadCentroidRows(currentCenTable);
+		if (randoms == null) {
+			// every worker and thread samples its own points, the same ones in
+			// every run
+			randoms = new Random[numThreads];
+			for (int t = 0; t < numThreads; t++) {
+				randoms[t] = new Random(getSelfID() + ((long) t << 32));
+			}
+		}
+		runThreads(batchSize, new PointRange() {
+			public void run(int thread, int from, int to) {
+				for (int i = from; i < to; i++) {
+					int offset = randoms[thread].nextInt(numPoints) * vectorSize;
+					addPoint(threadSums[thread], points, offset, nearestCentroid(points, offset));
 				}
 			}
+		});
+		addSums(batchTable);
+	}
 
-			// For a certain data point, found the nearest centroid. Add it to a
-			// partition in the new cenTable.
-			double[] partial = new double[vectorSize + 1];
+	// Move every centroid that got points in the batch towards them, with a
+	// learning rate of 1 / (points assigned to it so far). The count is kept
+	// in the last element of the centroid, and is the same on every worker
+	// because every worker applies the same allreduced batch table.
+	public void updateMiniBatchCentroids(Table<DoubleArray> cenTable, Table<DoubleArray> batchTable) {
+		for (Partition<DoubleArray> batchPartition : batchTable.getPartitions()) {
+			double[] sums = batchPartition.get().get();
+			double[] centroid = cenTable.getPartition(batchPartition.id()).get().get();
+			centroid[vectorSize] += sums[vectorSize];
 			for (int j = 0; j < vectorSize; j++) {
-				partial[j] = aPoint.get()[j];
+				// the same as one step of rate 1 / count per point
+				centroid[j] += (sums[j] - sums[vectorSize] * centroid[j]) / centroid[vectorSize];
 			}
-			partial[vectorSize] = 1;
-
-			// Create new partition for the centroid table if nearestPartitionID
-			// is null
-			if (newCenTable.getPartition(nearestPartitionID) == null) {
-				Partition<DoubleArray> tmpAp = new Partition<DoubleArray>(nearestPartitionID,
-						new DoubleArray(partial, 0, vectorSize + 1));
-				newCenTable.addPartition(tmpAp);
-			} else {
-				Partition<DoubleArray> apInCenTable = newCenTable.getPartition(nearestPartitionID);
-				for (int i = 0; i < vectorSize + 1; i++) {
-					apInCenTable.get().get()[i] += partial[i];
+		}
+	}
+
+	// work on the points from <= i < to, the share of one thread
+	private interface PointRange {
+		void run(int thread, int from, int to);
+	}
+
+	// Split count points into one contiguous range per thread, and wait
+	// until all ranges are done. The first range runs in the calling
+	// thread, the others in the pool.
+	private void runThreads(int count, final PointRange range) throws IOException {
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int t = 1; t < numThreads; t++) {
+			final int thread = t;
+			final int from = (int) ((long) count * t / numThreads);
+			final int to = (int) ((long) count * (t + 1) / numThreads);
+			futures.add(pool.submit(new Runnable() {
+				public void run() {
+					range.run(thread, from, to);
+				}
+			}));
+		}
+		try {
+			range.run(0, 0, (int) ((long) count / numThreads));
+		} finally {
+			// wait for the pool even if the first range failed, so that no
+			// thread still writes into threadSums afterwards
+			try {
+				for (Future<?> future : futures) {
+					future.get();
 				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the K-means threads");
+			} catch (ExecutionException e) {
+				throw new IOException("K-means thread failed", e.getCause());
+			}
+		}
+	}
+
+	// Copy the centroids of the table into rows of centroids, and clear the
+	// sums of every row and thread
+	private void loadCentroidRows(Table<DoubleArray> currentCenTable) {
+		numCentroidRows = currentCenTable.getNumPartitions();
+		if (centroidIDs.length < numCentroidRows) {
+			centroids = new double[numCentroidRows * vectorSize];
+			centroidIDs = new int[numCentroidRows];
+			threadSums = new double[numThreads][numCentroidRows * (vectorSize + 1)];
+		}
+		int row = 0;
+		for (Partition<DoubleArray> aCentroidPartition : currentCenTable.getPartitions()) {
+			System.arraycopy(aCentroidPartition.get().get(), 0, centroids, row * vectorSize, vectorSize);
+			centroidIDs[row++] = aCentroidPartition.id();
+		}
+		for (double[] sums : threadSums) {
+			Arrays.fill(sums, 0, numCentroidRows * (vectorSize + 1), 0.0);
+		}
+	}
+
+	// row of the centroid nearest to the point at points[offset]. The squared
+	// distance has the same nearest centroid as the distance.
+	private int nearestCentroid(double[] points, int offset) {
+		double minDist = Double.MAX_VALUE;
+		int nearestRow = -1;
+		for (int row = 0; row < numCentroidRows; row++) {
+			double tempDist = squaredDistance(points, offset, centroids, row * vectorSize);
+			if (tempDist < minDist) {
+				minDist = tempDist;
+				nearestRow = row;
+			}
+		}
+		return nearestRow;
+	}
+
+	// add the point at points[offset] and a count of 1 to the sums of row
+	private void addPoint(double[] sums, double[] points, int offset, int row) {
+		int sum = row * (vectorSize + 1);
+		for (int j = 0; j < vectorSize; j++) {
+			sums[sum + j] += points[offset + j];
+		}
+		sums[sum + vectorSize] += 1;
+	}
+
+	// Add up the sums of all threads, in thread order so the result does not
+	// depend on scheduling, and make one partition per centroid that got any
+	// points, for the allreduce
+	private void addSums(Table<DoubleArray> newCenTable) {
+		double[] sums = threadSums[0];
+		int length = numCentroidRows * (vectorSize + 1);
+		for (int t = 1; t < numThreads; t++) {
+			for (int j = 0; j < length; j++) {
+				sums[j] += threadSums[t][j];
+			}
+		}
+		for (int row = 0; row < numCentroidRows; row++) {
+			int sum = row * (vectorSize + 1);
+			if (sums[sum + vectorSize] > 0) {
+				double[] partial = Arrays.copyOfRange(sums, sum, sum + vectorSize + 1);
+				newCenTable.addPartition(new Partition<DoubleArray>(centroidIDs[row],
+						new DoubleArray(partial, 0, vectorSize + 1)));
 			}
 		}
 	}
@@ -111,7 +428,8 @@ public class KmeansMapper extends CollectiveMapper<String, String, Object, Objec
 	public void runKmeans(List<String> fileNames, Configuration conf, Context context) throws IOException {
 
 		// load data points
-		ArrayList<DoubleArray> dataPoints = loadData(fileNames, vectorSize, conf);
+		points = loadData(fileNames, vectorSize, conf);
+		numPoints = points.length / vectorSize;
 
 		// Load centroids. For every partition in the centroid table, we will
 		// use the last element to store the number of points which are
@@ -129,28 +447,52 @@ public class KmeansMapper extends CollectiveMapper<String, String, Object, Objec
 		System.out.println("After brodcasting centroids ...");
 		printTable(cenTable);
 
-		Table<DoubleArray> newCenTable = new Table<>(0, new DoubleArrPlus());
-
-		System.out.println("Iteraton No." + jobID);
-
-		// Compute new partial centroid table using previousCentroid Table and
-		// Data points
-		kmeanComputation(newCenTable, cenTable, dataPoints);
+		// In mapper mode the points and centroids stay in memory between
+		// iterations, and the centroids are only written after the last one
+		int iterations = iterateInMapper || batchSize > 0 ? numofIterations : 1;
+		for (int iter = 0; iter < iterations; iter++) {
+			long iterationStart = System.currentTimeMillis();
+			Table<DoubleArray> newCenTable = new Table<>(0, new DoubleArrPlus());
+
+			System.out.println("Iteraton No." + (jobID + iter));
+
+			if (batchSize > 0) {
+				// sums of the sampled points per centroid, only the centroids
+				// that got any
+				miniBatchComputation(newCenTable, cenTable, points);
+				allreduce("main", "allreduce_" + (jobID + iter), newCenTable);
+				updateMiniBatchCentroids(cenTable, newCenTable);
+				LOG.info("Iteration " + (jobID + iter) + " updated " + newCenTable.getNumPartitions() + " of "
+						+ cenTable.getNumPartitions() + " centroids");
+			} else {
+				// Compute new partial centroid table using previousCentroid
+				// Table and Data points
+				if (pruning) {
+					prunedComputation(newCenTable, cenTable, points);
+					LOG.info("Iteration " + (jobID + iter) + " computed " + distances + " of "
+							+ (long) numPoints * numCentroidRows + " distances");
+				} else {
+					kmeanComputation(newCenTable, cenTable, points);
+				}
 
-		allreduce("main", "allreduce_" + jobID, newCenTable);
+				allreduce("main", "allreduce_" + (jobID + iter), newCenTable);
 
-		System.out.println("After allreduce");
-		printTable(newCenTable);
+				// New centroids, the input of the next iteration
+				calculateCentroids(newCenTable);
+				cenTable = newCenTable;
+			}
+			LOG.info("Iteration " + (jobID + iter) + " (ms) :" + (System.currentTimeMillis() - iterationStart));
+		}
 
-		// New centroids
-		calculateCentroids(newCenTable);
+		System.out.println("after calculate new centroids");
+		printTable(cenTable);
 
 		if (this.isMaster() == true) {
-			updateCentroidFile(newCenTable, conf, conf.get(KMeansConstants.centroid_file));
+			updateCentroidFile(cenTable, conf, conf.get(KMeansConstants.centroid_file));
 
 			// Last iteration
-			if (jobID == numofIterations - 1) {
-				outputCentroids(newCenTable, conf, context);
+			if (iterateInMapper || batchSize > 0 || jobID == numofIterations - 1) {
+				outputCentroids(cenTable, conf, context);
 			}
 		}
 
@@ -211,17 +553,17 @@ public class KmeansMapper extends CollectiveMapper<String, String, Object, Objec
 
 			doubles[vectorSize] = 0;
 		}
-		System.out.println("after calculate new centroids");
-		printTable(cenTable);
 	}
 
-	// calculate Euclidean distance.
-	private double calcEuclideanDistance(DoubleArray aPoint, DoubleArray aCentroidPoint, int vectorSize) {
+	// squared Euclidean distance between the vectors at a[aOffset] and
+	// b[bOffset]
+	private double squaredDistance(double[] a, int aOffset, double[] b, int bOffset) {
 		double euclideanDistanceSquare = 0;
 		for (int i = 0; i < vectorSize; i++) {
-			euclideanDistanceSquare += Math.pow(aPoint.get()[i] - aCentroidPoint.get()[i], 2);
+			double difference = a[aOffset + i] - b[bOffset + i];
+			euclideanDistanceSquare += difference * difference;
 		}
-		return Math.sqrt(euclideanDistanceSquare);
+		return euclideanDistanceSquare;
 	}
 
 	// Load centroids from HDFS
@@ -254,10 +596,11 @@ public class KmeansMapper extends CollectiveMapper<String, String, Object, Objec
 		}
 	}
 
-	// load data form HDFS
-	public ArrayList<DoubleArray> loadData(List<String> fileNames, int vectorSize, Configuration conf)
-			throws IOException {
-		ArrayList<DoubleArray> data = new ArrayList<DoubleArray>();
+	// load data form HDFS into one row-major array, vectorSize values per
+	// point
+	public double[] loadData(List<String> fileNames, int vectorSize, Configuration conf) throws IOException {
+		double[] data = new double[1024 * vectorSize];
+		int length = 0;
 		for (String filename : fileNames) {
 			FileSystem fs = FileSystem.get(conf);
 			Path dPath = new Path(filename);
@@ -272,17 +615,20 @@ public class KmeansMapper extends CollectiveMapper<String, String, Object, Objec
 					System.out.println("Errors while loading data.");
 					System.exit(-1);
 				} else {
-					double[] aDataPoint = new double[vectorSize];
-
+					if (length + vectorSize > data.length) {
+						if (data.length > Integer.MAX_VALUE / 2) {
+							throw new IOException("Too many points for one mapper: " + length / vectorSize);
+						}
+						data = Arrays.copyOf(data, data.length * 2);
+					}
 					for (int i = 0; i < vectorSize; i++) {
-						aDataPoint[i] = Double.parseDouble(splitLine[i]);
+						data[length++] = Double.parseDouble(splitLine[i]);
 					}
-					DoubleArray da = new DoubleArray(aDataPoint, 0, vectorSize);
-					data.add(da);
 				}
 			}
+			br.close();
 		}
-		return data;
+		return Arrays.copyOf(data, length);
 	}
 
 	public void printTable(Table<DoubleArray> dataTable) {